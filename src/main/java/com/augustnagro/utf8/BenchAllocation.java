@@ -0,0 +1,134 @@
+package com.augustnagro.utf8;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/*
+  Allocation per call of the specialized validators, next to Utf8.validate
+  called through a LookupTables field that holds each of the shapes in turn,
+  so its call site is not constant.
+
+  Run main, which adds the gc profiler and fails if a specialized validator
+  allocates. Or pass -prof gc to benchmarks.jar and read gc.alloc.rate.norm.
+ */
+@BenchmarkMode(Mode.Throughput)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(time = 1, iterations = 1)
+@Fork(
+  value = 1, warmups = 1,
+  jvmArgsPrepend = {
+    "--enable-preview",
+    "--add-modules=jdk.incubator.vector",
+  }
+)
+public class BenchAllocation {
+
+  // above this, an allocation of even a few bytes happened in some call
+  private static final double MAX_BYTES_PER_OP = 0.5;
+
+  @Param({"/twitter.json", "/utf8-demo.txt", "/20k.txt"})
+  String testFile;
+
+  byte[] buf;
+
+  /*
+  Not final, and every shape reaches Utf8.validate before it is compiled,
+  as in an application that uses more than one.
+   */
+  LookupTables lut128;
+  LookupTables lut256;
+  LookupTables lut512;
+
+  @Setup
+  public void setup() throws IOException {
+    buf = getClass().getResourceAsStream(testFile).readAllBytes();
+    lut128 = new LookupTables128();
+    lut256 = new LookupTables256();
+    lut512 = new LookupTables512();
+    for (int i = 0; i < 10_000; i++) {
+      Utf8.validate(buf, 0, 256, lut128);
+      Utf8.validate(buf, 0, 256, lut256);
+      Utf8.validate(buf, 0, 256, lut512);
+    }
+  }
+
+  @Benchmark
+  public boolean generic_128() {
+    return Utf8.validate(buf, lut128);
+  }
+
+  @Benchmark
+  public boolean generic_256() {
+    return Utf8.validate(buf, lut256);
+  }
+
+  @Benchmark
+  public boolean generic_512() {
+    return Utf8.validate(buf, lut512);
+  }
+
+  @Benchmark
+  public boolean specialized_128() {
+    return Utf8Vector128.validate(buf);
+  }
+
+  @Benchmark
+  public boolean specialized_256() {
+    return Utf8Vector256.validate(buf);
+  }
+
+  @Benchmark
+  public boolean specialized_512() {
+    return Utf8Vector512.validate(buf);
+  }
+
+  @Benchmark
+  public boolean specialized_preferred() {
+    return Utf8VectorPreferred.validate(buf);
+  }
+
+  /**
+   * Runs this benchmark with the gc profiler, and throws if a specialized
+   * validator allocated in any configuration.
+   */
+  public static void main(String[] args) throws RunnerException {
+    Options options = new OptionsBuilder()
+        .include(BenchAllocation.class.getSimpleName())
+        .addProfiler(GCProfiler.class)
+        .build();
+    Collection<RunResult> results = new Runner(options).run();
+
+    StringBuilder failures = new StringBuilder();
+    for (RunResult run : results) {
+      String benchmark = run.getParams().getBenchmark();
+      if (!benchmark.contains("specialized")) {
+        continue;
+      }
+      Result<?> alloc = run.getSecondaryResults().get("gc.alloc.rate.norm");
+      if (alloc == null) {
+        alloc = run.getSecondaryResults().get("·gc.alloc.rate.norm");
+      }
+      if (alloc == null || alloc.getScore() > MAX_BYTES_PER_OP) {
+        failures.append(benchmark)
+            .append(' ').append(run.getParams().getParam("testFile"))
+            .append(": ").append(alloc == null ? "no gc.alloc.rate.norm" : alloc.getScore() + " B/op")
+            .append('\n');
+      }
+    }
+    if (!failures.isEmpty()) {
+      throw new AssertionError("allocation in specialized validators:\n" + failures);
+    }
+    System.out.println("no specialized validator allocated");
+  }
+
+}
@@ -0,0 +1,85 @@
+package com.augustnagro.utf8;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+
+import static jdk.incubator.vector.VectorOperators.IS_NEGATIVE;
+
+/**
+ * Throughput of finding the first non-ascii byte, and of validation that
+ * skips the ascii prefix first. 20k.txt is all ascii; twitter.json has its
+ * first non-ascii byte 273 bytes in.
+ */
+@BenchmarkMode(Mode.Throughput)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(time = 1, iterations = 1)
+@Fork(
+  value = 1, warmups = 1,
+  jvmArgsPrepend = {
+    "--enable-preview",
+    "--add-modules=jdk.incubator.vector",
+  }
+)
+public class BenchAscii {
+
+  private static final LookupTables LUTS_256 = new LookupTables256();
+  private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+  @Param({"/20k.txt", "/twitter.json", "/utf8-demo.txt"})
+  String testFile;
+
+  byte[] buf;
+
+  @Setup
+  public void setup() throws IOException {
+    buf = getClass().getResourceAsStream(testFile).readAllBytes();
+  }
+
+  @Benchmark
+  public int scalar() {
+    for (int i = 0; i < buf.length; i++) {
+      if (buf[i] < 0) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  // the same scan as Utf8.indexOfNonAscii, without its 4x unrolling
+  @Benchmark
+  public int vector_one_per_iteration() {
+    int i = 0;
+    for (; i < SPECIES.loopBound(buf.length); i += SPECIES.length()) {
+      VectorMask<Byte> negative = ByteVector.fromArray(SPECIES, buf, i).test(IS_NEGATIVE);
+      if (negative.anyTrue()) {
+        return i + negative.firstTrue();
+      }
+    }
+    for (; i < buf.length; i++) {
+      if (buf[i] < 0) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Benchmark
+  public int indexOfNonAscii() {
+    return Utf8.indexOfNonAscii(buf, 0, buf.length);
+  }
+
+  @Benchmark
+  public boolean validate_256() {
+    return Utf8.validate(buf, LUTS_256);
+  }
+
+  @Benchmark
+  public boolean validateFromNonAscii_256() {
+    return Utf8.validateFromNonAscii(buf, 0, buf.length, LUTS_256);
+  }
+}
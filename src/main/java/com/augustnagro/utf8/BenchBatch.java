@@ -0,0 +1,136 @@
+package com.augustnagro.utf8;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Validating many small records stored back to back, one call per record
+ * versus one call for the whole batch.
+ */
+@BenchmarkMode(Mode.Throughput)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(time = 1, iterations = 1)
+@Fork(
+  value = 1, warmups = 1,
+  jvmArgsPrepend = {
+    "--enable-preview",
+    "--add-modules=jdk.incubator.vector",
+  }
+)
+public class BenchBatch {
+
+  private static final LookupTables LUTS_256 = new LookupTables256();
+  private static final LookupTables LUTS_512 = new LookupTables512();
+
+  @Param({"/twitter.json"})
+  String testFile;
+
+  /*
+  Record sizes in bytes:
+  -> tiny: uniform in [5, 60], like keys and identifiers.
+  -> small: log-normal around 120, like typical message values.
+  -> mixed: 90% tiny and 10% uniform in [256, 4096].
+   */
+  @Param({"tiny", "small", "mixed"})
+  String distribution;
+
+  @Param({"10000"})
+  int recordCount;
+
+  byte[] buf;
+  int[] offsets;
+  int[] lengths;
+
+  /*
+  Cuts buf into records at char boundaries, so every record is valid.
+   */
+  @Setup
+  public void setup() throws IOException {
+    byte[] text = getClass().getResourceAsStream(testFile).readAllBytes();
+    Random random = new Random(42);
+    offsets = new int[recordCount];
+    lengths = new int[recordCount];
+    buf = new byte[recordCount * 4096];
+    int fill = 0;
+    int pos = 0;
+    for (int r = 0; r < recordCount; r++) {
+      int size = Math.min(recordSize(random), text.length / 2);
+      if (pos + size > text.length) {
+        pos = 0;
+      }
+      int from = pos;
+      while ((text[from] & 0b11000000) == 0b10000000) {
+        from++;
+      }
+      int to = from + size;
+      while (to < text.length && (text[to] & 0b11000000) == 0b10000000) {
+        to--;
+      }
+      System.arraycopy(text, from, buf, fill, to - from);
+      offsets[r] = fill;
+      lengths[r] = to - from;
+      fill += to - from;
+      pos = to;
+    }
+    if (!Utf8.scalarValidUtf8(0, fill, buf)) {
+      throw new IllegalStateException("records are not valid UTF-8");
+    }
+  }
+
+  private int recordSize(Random random) {
+    return switch (distribution) {
+      case "tiny" -> 5 + random.nextInt(56);
+      case "small" -> (int) Math.min(4096, Math.exp(Math.log(120) + 0.7 * random.nextGaussian()));
+      case "mixed" -> random.nextInt(10) == 0 ? 256 + random.nextInt(3841) : 5 + random.nextInt(56);
+      default -> throw new IllegalArgumentException(distribution);
+    };
+  }
+
+  @Benchmark
+  public int swar_per_record() {
+    int valid = 0;
+    for (int r = 0; r < recordCount; r++) {
+      if (Utf8Swar.validate(buf, offsets[r], lengths[r])) {
+        valid++;
+      }
+    }
+    return valid;
+  }
+
+  @Benchmark
+  public int vector_256_per_record() {
+    int valid = 0;
+    for (int r = 0; r < recordCount; r++) {
+      if (Utf8.validate(buf, offsets[r], lengths[r], LUTS_256)) {
+        valid++;
+      }
+    }
+    return valid;
+  }
+
+  @Benchmark
+  public int vector_256_masked_per_record() {
+    int valid = 0;
+    for (int r = 0; r < recordCount; r++) {
+      if (Utf8.validateMasked(buf, offsets[r], lengths[r], LUTS_256)) {
+        valid++;
+      }
+    }
+    return valid;
+  }
+
+  @Benchmark
+  public BitSet vector_256_batch() {
+    return Utf8Batch.validate(buf, offsets, lengths, LUTS_256);
+  }
+
+  @Benchmark
+  public BitSet vector_512_batch() {
+    return Utf8Batch.validate(buf, offsets, lengths, LUTS_512);
+  }
+
+}
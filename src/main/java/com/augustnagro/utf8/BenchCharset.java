@@ -0,0 +1,74 @@
+package com.augustnagro.utf8;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/*
+  Decoding through java.nio.charset, with the JDK's UTF-8
+  and with the charset from Utf8VectorCharsetProvider.
+ */
+@BenchmarkMode(Mode.Throughput)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(time = 1, iterations = 1)
+@Fork(
+  value = 1, warmups = 1,
+  jvmArgsPrepend = {
+    "--enable-preview",
+    "--add-modules=jdk.incubator.vector",
+  }
+)
+public class BenchCharset {
+
+  private static final Charset VECTOR_UTF_8 = Charset.forName(Utf8VectorCharset.NAME);
+
+  @Param({"/twitter.json", "/utf8-demo.txt"})
+  String testFile;
+
+  byte[] buf;
+  char[] chars;
+
+  @Setup
+  public void setup() throws IOException {
+    buf = getClass().getResourceAsStream(testFile).readAllBytes();
+    chars = new char[8192];
+  }
+
+  private long read(Charset charset) throws IOException {
+    long total = 0;
+    try (Reader reader = new InputStreamReader(new ByteArrayInputStream(buf), charset)) {
+      int n;
+      while ((n = reader.read(chars)) >= 0) {
+        total += n;
+      }
+    }
+    return total;
+  }
+
+  @Benchmark
+  public String jdk_string() {
+    return new String(buf, StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public String vector_string() {
+    return new String(buf, VECTOR_UTF_8);
+  }
+
+  @Benchmark
+  public long jdk_reader() throws IOException {
+    return read(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public long vector_reader() throws IOException {
+    return read(VECTOR_UTF_8);
+  }
+
+}
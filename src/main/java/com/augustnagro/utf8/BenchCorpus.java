@@ -0,0 +1,114 @@
+package com.augustnagro.utf8;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/*
+  Every engine against every corpus from Corpus: synthetic script mixes and
+  the resource files, at sizes from 16 B to 1 GB, with an error at the start,
+  middle or end, or none. The full matrix takes a long time; narrow it with
+  -p, for example -p corpus=cjk,emoji -p size=65536.
+
+  Run main to export the results to JSON, or pass -rf json to benchmarks.jar.
+ */
+@BenchmarkMode(Mode.Throughput)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(time = 1, iterations = 1)
+@Fork(
+  value = 1, warmups = 1,
+  jvmArgsPrepend = {
+    "--enable-preview",
+    "--add-modules=jdk.incubator.vector",
+    "-Xmx8g",
+  }
+)
+public class BenchCorpus {
+
+  private static final LookupTables LUTS_128 = new LookupTables128();
+  private static final LookupTables LUTS_256 = new LookupTables256();
+  private static final LookupTables LUTS_512 = new LookupTables512();
+
+  @Param({
+    "ascii", "latin", "cyrillic", "cjk", "emoji", "mixed",
+    "/twitter.json", "/utf8-demo.txt", "/utf8-demo-invalid.txt", "/20k.txt"
+  })
+  String corpus;
+
+  @Param({"16", "256", "4096", "65536", "1048576", "67108864", "1073741824"})
+  int size;
+
+  @Param({"none", "start", "middle", "end"})
+  String errorPosition;
+
+  @Param({"42"})
+  long seed;
+
+  byte[] buf;
+
+  @Setup
+  public void setup() throws IOException {
+    buf = Corpus.generate(corpus, size, seed);
+    Corpus.injectError(buf, errorPosition);
+  }
+
+  @Benchmark
+  public boolean jdk() {
+    try {
+      new String(buf, StandardCharsets.UTF_8);
+      return true;
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  @Benchmark
+  public boolean scalar() {
+    return Utf8.scalarValidUtf8(0, buf);
+  }
+
+  @Benchmark
+  public boolean swar() {
+    return Utf8Swar.validate(buf);
+  }
+
+  @Benchmark
+  public boolean vector_128() {
+    return Utf8.validate(buf, LUTS_128);
+  }
+
+  @Benchmark
+  public boolean vector_256() {
+    return Utf8.validate(buf, LUTS_256);
+  }
+
+  @Benchmark
+  public boolean vector_512() {
+    return Utf8.validate(buf, LUTS_512);
+  }
+
+  /**
+   * Runs this benchmark (with any -p style parameters given as
+   * name=value1,value2 arguments) and writes the results to corpus-results.json.
+   */
+  public static void main(String[] args) throws RunnerException {
+    OptionsBuilder options = new OptionsBuilder();
+    options.include(BenchCorpus.class.getSimpleName())
+        .resultFormat(ResultFormatType.JSON)
+        .result("corpus-results.json");
+    for (String arg : args) {
+      int eq = arg.indexOf('=');
+      options.param(arg.substring(0, eq), arg.substring(eq + 1).split(","));
+    }
+    Options built = options.build();
+    new Runner(built).run();
+  }
+
+}
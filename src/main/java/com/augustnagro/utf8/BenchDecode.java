@@ -0,0 +1,67 @@
+package com.augustnagro.utf8;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/*
+  Compares the JDK's UTF-8 decoder with Utf8Decoder, which validates and
+  transcodes to UTF-16 in one pass.
+ */
+@BenchmarkMode(Mode.Throughput)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(time = 1, iterations = 1)
+@Fork(
+  value = 1, warmups = 1,
+  jvmArgsPrepend = {
+    "--enable-preview",
+    "--add-modules=jdk.incubator.vector",
+  }
+)
+public class BenchDecode {
+
+  private static final LookupTables LUTS_128 = new LookupTables128();
+  private static final LookupTables LUTS_256 = new LookupTables256();
+  private static final LookupTables LUTS_512 = new LookupTables512();
+
+  @Param({"/twitter.json", "/utf8-demo.txt"})
+  String testFile;
+
+  byte[] buf;
+  char[] chars;
+
+  @Setup
+  public void setup() throws IOException {
+    buf = getClass().getResourceAsStream(testFile).readAllBytes();
+    chars = new char[buf.length];
+  }
+
+  @Benchmark
+  public String jdk() {
+    return new String(buf, StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public String vector_512() {
+    return Utf8Decoder.decodeToString(buf, 0, buf.length, LUTS_512);
+  }
+
+  @Benchmark
+  public String vector_256() {
+    return Utf8Decoder.decodeToString(buf, 0, buf.length, LUTS_256);
+  }
+
+  @Benchmark
+  public String vector_128() {
+    return Utf8Decoder.decodeToString(buf, 0, buf.length, LUTS_128);
+  }
+
+  // decoding into a reused char[], without building a String
+  @Benchmark
+  public int vector_256_chars() {
+    return Utf8Decoder.decode(buf, 0, buf.length, chars, 0, LUTS_256);
+  }
+
+}
@@ -0,0 +1,77 @@
+package com.augustnagro.utf8;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+
+/*
+  Compares Utf8.validate, which checks the error vector once at the end,
+  with Utf8.validateEarlyExit. On valid input the two should be equal;
+  with an error near the start, early exit should only scan a few blocks.
+ */
+@BenchmarkMode(Mode.Throughput)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(time = 1, iterations = 1)
+@Fork(
+  value = 1, warmups = 1,
+  jvmArgsPrepend = {
+    "--enable-preview",
+    "--add-modules=jdk.incubator.vector",
+  }
+)
+public class BenchEarlyExit {
+
+  private static final LookupTables LUTS_128 = new LookupTables128();
+  private static final LookupTables LUTS_256 = new LookupTables256();
+
+  @Param({"/twitter.json", "/20k.txt"})
+  String testFile;
+
+  // the test file is repeated to fill about this many bytes
+  @Param({"67108864"})
+  int size;
+
+  // offset of an invalid byte, or -1 for valid input
+  @Param({"-1", "10"})
+  int errorOffset;
+
+  @Param({"64", "256", "1024"})
+  int blocksPerCheck;
+
+  byte[] buf;
+
+  @Setup
+  public void setup() throws IOException {
+    byte[] file = getClass().getResourceAsStream(testFile).readAllBytes();
+    int copies = Math.max(1, size / file.length);
+    buf = new byte[copies * file.length];
+    for (int i = 0; i < copies; i++) {
+      System.arraycopy(file, 0, buf, i * file.length, file.length);
+    }
+    if (errorOffset >= 0) {
+      buf[errorOffset] = (byte) 0xff;
+    }
+  }
+
+  @Benchmark
+  public boolean vector_256() {
+    return Utf8.validate(buf, LUTS_256);
+  }
+
+  @Benchmark
+  public boolean vector_256_early_exit() {
+    return Utf8.validateEarlyExit(buf, 0, buf.length, LUTS_256, blocksPerCheck);
+  }
+
+  @Benchmark
+  public boolean vector_128() {
+    return Utf8.validate(buf, LUTS_128);
+  }
+
+  @Benchmark
+  public boolean vector_128_early_exit() {
+    return Utf8.validateEarlyExit(buf, 0, buf.length, LUTS_128, blocksPerCheck);
+  }
+
+}
@@ -0,0 +1,68 @@
+package com.augustnagro.utf8;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/*
+  Compares String.getBytes(UTF_8) with Utf8Encoder, encoding from a char[]
+  and from a String into a reused byte[].
+ */
+@BenchmarkMode(Mode.Throughput)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(time = 1, iterations = 1)
+@Fork(
+  value = 1, warmups = 1,
+  jvmArgsPrepend = {
+    "--enable-preview",
+    "--add-modules=jdk.incubator.vector",
+  }
+)
+public class BenchEncode {
+
+  private static final LookupTables LUTS_128 = new LookupTables128();
+  private static final LookupTables LUTS_256 = new LookupTables256();
+  private static final LookupTables LUTS_512 = new LookupTables512();
+
+  @Param({"/twitter.json", "/utf8-demo.txt"})
+  String testFile;
+
+  String str;
+  char[] chars;
+  byte[] out;
+
+  @Setup
+  public void setup() throws IOException {
+    str = new String(getClass().getResourceAsStream(testFile).readAllBytes(), StandardCharsets.UTF_8);
+    chars = str.toCharArray();
+    out = new byte[3 * chars.length];
+  }
+
+  @Benchmark
+  public byte[] jdk() {
+    return str.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public int vector_512() {
+    return Utf8Encoder.encode(chars, 0, chars.length, out, 0, Utf8Encoder.SurrogatePolicy.REPLACE, LUTS_512);
+  }
+
+  @Benchmark
+  public int vector_256() {
+    return Utf8Encoder.encode(chars, 0, chars.length, out, 0, Utf8Encoder.SurrogatePolicy.REPLACE, LUTS_256);
+  }
+
+  @Benchmark
+  public int vector_128() {
+    return Utf8Encoder.encode(chars, 0, chars.length, out, 0, Utf8Encoder.SurrogatePolicy.REPLACE, LUTS_128);
+  }
+
+  @Benchmark
+  public int vector_256_string() {
+    return Utf8Encoder.encode(str, out, 0, Utf8Encoder.SurrogatePolicy.REPLACE, LUTS_256);
+  }
+
+}
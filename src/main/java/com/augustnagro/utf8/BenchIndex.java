@@ -0,0 +1,125 @@
+package com.augustnagro.utf8;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorSpecies;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteOrder;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static jdk.incubator.vector.VectorOperators.EQ;
+
+/*
+  Utf8.validateAndIndex, which finds '\n' while validating, against
+  Utf8.validate followed by a vectorized scan for '\n', on a byte[] and on
+  a native segment like a mapped file. The inputs are the test files
+  repeated to size bytes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(time = 1, iterations = 1)
+@Fork(
+  value = 1, warmups = 1,
+  jvmArgsPrepend = {
+    "--enable-preview",
+    "--add-modules=jdk.incubator.vector",
+  }
+)
+public class BenchIndex {
+
+  private static final LookupTables LUTS_256 = new LookupTables256();
+
+  @Param({"/twitter.json", "/20k.txt"})
+  String testFile;
+
+  @Param({"1048576", "67108864"})
+  int size;
+
+  byte[] buf;
+  MemorySegment seg;
+
+  // sums the delimiter indexes, so the scans cannot be optimized away
+  long sum;
+  IntConsumer intSink;
+  LongConsumer longSink;
+
+  @Setup
+  public void setup() throws IOException {
+    buf = Corpus.generate(testFile, size, 42);
+    seg = Arena.ofAuto().allocate(size);
+    seg.copyFrom(MemorySegment.ofArray(buf));
+    intSink = i -> sum += i;
+    longSink = i -> sum += i;
+  }
+
+  @Benchmark
+  public long fused_array() {
+    Utf8.validateAndIndex(buf, 0, buf.length, (byte) '\n', intSink, LUTS_256);
+    return sum;
+  }
+
+  @Benchmark
+  public long separate_array() {
+    if (Utf8.validate(buf, 0, buf.length, LUTS_256)) {
+      scan(buf, (byte) '\n', intSink);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public long fused_segment() {
+    Utf8.validateAndIndex(seg, (byte) '\n', longSink, LUTS_256);
+    return sum;
+  }
+
+  @Benchmark
+  public long separate_segment() {
+    if (Utf8.validate(seg, LUTS_256)) {
+      scan(seg, (byte) '\n', longSink);
+    }
+    return sum;
+  }
+
+  private static void scan(byte[] buf, byte delimiter, IntConsumer onDelimiter) {
+    VectorSpecies<Byte> species = LUTS_256.species();
+    int i = 0;
+    for (; i < species.loopBound(buf.length); i += species.length()) {
+      long delimiters = ByteVector.fromArray(species, buf, i).compare(EQ, delimiter).toLong();
+      while (delimiters != 0) {
+        onDelimiter.accept(i + Long.numberOfTrailingZeros(delimiters));
+        delimiters &= delimiters - 1;
+      }
+    }
+    for (; i < buf.length; i++) {
+      if (buf[i] == delimiter) {
+        onDelimiter.accept(i);
+      }
+    }
+  }
+
+  private static void scan(MemorySegment seg, byte delimiter, LongConsumer onDelimiter) {
+    VectorSpecies<Byte> species = LUTS_256.species();
+    long length = seg.byteSize();
+    long i = 0;
+    for (; i < species.loopBound(length); i += species.length()) {
+      long delimiters = ByteVector.fromMemorySegment(species, seg, i, ByteOrder.nativeOrder())
+          .compare(EQ, delimiter).toLong();
+      while (delimiters != 0) {
+        onDelimiter.accept(i + Long.numberOfTrailingZeros(delimiters));
+        delimiters &= delimiters - 1;
+      }
+    }
+    for (; i < length; i++) {
+      if (seg.get(JAVA_BYTE, i) == delimiter) {
+        onDelimiter.accept(i);
+      }
+    }
+  }
+
+}
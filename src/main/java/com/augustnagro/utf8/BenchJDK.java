@@ -47,6 +47,11 @@ public class BenchJDK {
     return Utf8.scalarValidUtf8(0, buf);
   }
 
+  @Benchmark
+  public boolean swar() {
+    return Utf8Swar.validate(buf);
+  }
+
   @Benchmark
   public boolean vector_512() {
     return Utf8.validate(buf, LUTS_512);
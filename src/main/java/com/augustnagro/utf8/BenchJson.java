@@ -0,0 +1,64 @@
+package com.augustnagro.utf8;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+
+/*
+  JsonIndexer.index at each vector length against the byte-by-byte
+  JsonIndexer.scalarIndex, with Utf8.validate alone for the cost of
+  validation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(time = 1, iterations = 1)
+@Fork(
+  value = 1, warmups = 1,
+  jvmArgsPrepend = {
+    "--enable-preview",
+    "--add-modules=jdk.incubator.vector",
+  }
+)
+public class BenchJson {
+
+  private static final LookupTables LUTS_128 = new LookupTables128();
+  private static final LookupTables LUTS_256 = new LookupTables256();
+  private static final LookupTables LUTS_512 = new LookupTables512();
+
+  @Param({"/twitter.json"})
+  String testFile;
+
+  byte[] buf;
+
+  @Setup
+  public void setup() throws IOException {
+    buf = getClass().getResourceAsStream(testFile).readAllBytes();
+  }
+
+  @Benchmark
+  public int[] scalar() {
+    return JsonIndexer.scalarIndex(buf, 0, buf.length);
+  }
+
+  @Benchmark
+  public int[] vector_512() {
+    return JsonIndexer.index(buf, 0, buf.length, LUTS_512);
+  }
+
+  @Benchmark
+  public int[] vector_256() {
+    return JsonIndexer.index(buf, 0, buf.length, LUTS_256);
+  }
+
+  @Benchmark
+  public int[] vector_128() {
+    return JsonIndexer.index(buf, 0, buf.length, LUTS_128);
+  }
+
+  @Benchmark
+  public boolean validate_256() {
+    return Utf8.validate(buf, 0, buf.length, LUTS_256);
+  }
+
+}
@@ -0,0 +1,68 @@
+package com.augustnagro.utf8;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.util.concurrent.ForkJoinPool;
+
+/*
+  Shows how Utf8.validateParallel scales with the number of threads,
+  against single-threaded Utf8.validate on the same segment.
+ */
+@BenchmarkMode(Mode.Throughput)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(time = 1, iterations = 1)
+@Fork(
+  value = 1, warmups = 1,
+  jvmArgsPrepend = {
+    "--enable-preview",
+    "--add-modules=jdk.incubator.vector",
+  }
+)
+public class BenchParallel {
+
+  private static final LookupTables LUTS_256 = new LookupTables256();
+
+  @Param({"/twitter.json"})
+  String testFile;
+
+  // the test file is repeated to fill about this many bytes
+  @Param({"268435456"})
+  int size;
+
+  @Param({"1", "2", "4", "8", "16", "32"})
+  int threads;
+
+  MemorySegment seg;
+  ForkJoinPool pool;
+
+  @Setup
+  public void setup() throws IOException {
+    byte[] file = getClass().getResourceAsStream(testFile).readAllBytes();
+    int copies = Math.max(1, size / file.length);
+    byte[] buf = new byte[copies * file.length];
+    for (int i = 0; i < copies; i++) {
+      System.arraycopy(file, 0, buf, i * file.length, file.length);
+    }
+    seg = MemorySegment.ofArray(buf);
+    pool = new ForkJoinPool(threads);
+  }
+
+  @TearDown
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  @Benchmark
+  public boolean vector_256() {
+    return Utf8.validate(seg, LUTS_256);
+  }
+
+  @Benchmark
+  public boolean vector_256_parallel() {
+    return Utf8.validateParallel(seg, LUTS_256, pool);
+  }
+
+}
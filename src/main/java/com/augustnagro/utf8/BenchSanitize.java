@@ -0,0 +1,55 @@
+package com.augustnagro.utf8;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+@BenchmarkMode(Mode.Throughput)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(time = 1, iterations = 1)
+@Fork(
+  value = 1, warmups = 1,
+  jvmArgsPrepend = {
+    "--enable-preview",
+    "--add-modules=jdk.incubator.vector",
+  }
+)
+public class BenchSanitize {
+
+  private static final LookupTables LUTS_256 = new LookupTables256();
+  private static final LookupTables LUTS_512 = new LookupTables512();
+
+  @Param({"/twitter.json", "/utf8-demo-invalid.txt"})
+  String testFile;
+
+  byte[] buf;
+  byte[] dst;
+
+  @Setup
+  public void setup() throws IOException {
+    buf = getClass().getResourceAsStream(testFile).readAllBytes();
+    dst = new byte[3 * buf.length];
+  }
+
+  /*
+  The JDK decoder replaces malformed input with U+FFFD,
+  so decoding and encoding again gives sanitized bytes.
+   */
+  @Benchmark
+  public byte[] jdk() {
+    return new String(buf, StandardCharsets.UTF_8).getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public int vector_256() {
+    return Utf8.sanitize(buf, 0, buf.length, dst, 0, LUTS_256);
+  }
+
+  @Benchmark
+  public int vector_512() {
+    return Utf8.sanitize(buf, 0, buf.length, dst, 0, LUTS_512);
+  }
+
+}
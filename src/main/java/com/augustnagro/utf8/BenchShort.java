@@ -0,0 +1,101 @@
+package com.augustnagro.utf8;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of validating short inputs, like JSON keys and headers,
+ * where the scalar tail is most of the work.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(time = 1, iterations = 1)
+@Fork(
+  value = 1, warmups = 1,
+  jvmArgsPrepend = {
+    "--enable-preview",
+    "--add-modules=jdk.incubator.vector",
+  }
+)
+public class BenchShort {
+
+  private static final LookupTables LUTS_128 = new LookupTables128();
+  private static final LookupTables LUTS_256 = new LookupTables256();
+  private static final LookupTables LUTS_512 = new LookupTables512();
+
+  @Param({"/twitter.json", "/utf8-demo.txt"})
+  String testFile;
+
+  @Param({"1", "5", "16", "31", "60", "64", "100", "128", "200", "256"})
+  int size;
+
+  byte[] buf;
+
+  /*
+  Takes whole chars from the start of testFile, and pads with ascii
+  when the next char would not fit, so buf is always valid.
+   */
+  @Setup
+  public void setup() throws IOException {
+    String text = new String(getClass().getResourceAsStream(testFile).readAllBytes(), StandardCharsets.UTF_8);
+    StringBuilder sb = new StringBuilder();
+    int length = 0;
+    for (int i = 0; length < size; i += Character.charCount(text.codePointAt(i))) {
+      int codePoint = text.codePointAt(i);
+      int n = new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8).length;
+      if (length + n > size) {
+        codePoint = 'a';
+        n = 1;
+      }
+      sb.appendCodePoint(codePoint);
+      length += n;
+    }
+    buf = sb.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public boolean scalar() {
+    return Utf8.scalarValidUtf8(0, buf);
+  }
+
+  @Benchmark
+  public boolean swar() {
+    return Utf8Swar.validate(buf);
+  }
+
+  @Benchmark
+  public boolean vector_256() {
+    return Utf8.validate(buf, 0, buf.length, LUTS_256);
+  }
+
+  @Benchmark
+  public boolean vector_128_masked() {
+    return Utf8.validateMasked(buf, 0, buf.length, LUTS_128);
+  }
+
+  @Benchmark
+  public boolean vector_256_masked() {
+    return Utf8.validateMasked(buf, 0, buf.length, LUTS_256);
+  }
+
+  @Benchmark
+  public boolean vector_512_masked() {
+    return Utf8.validateMasked(buf, 0, buf.length, LUTS_512);
+  }
+
+  @Benchmark
+  public boolean fixed_256() {
+    return Utf8Vector256.validate(buf);
+  }
+
+  @Benchmark
+  public boolean auto() {
+    return Utf8Auto.validate(buf);
+  }
+
+}
@@ -0,0 +1,95 @@
+package com.augustnagro.utf8;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/*
+  The overhead of validating while copying a stream or channel,
+  against the same copy without validation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(time = 1, iterations = 1)
+@Fork(
+  value = 1, warmups = 1,
+  jvmArgsPrepend = {
+    "--enable-preview",
+    "--add-modules=jdk.incubator.vector",
+  }
+)
+public class BenchStream {
+
+  private static final LookupTables LUTS_256 = new LookupTables256();
+
+  @Param({"/20k.txt", "/twitter.json"})
+  String testFile;
+
+  // the test file is repeated to fill about this many bytes
+  @Param({"268435456"})
+  int size;
+
+  @Param({"65536"})
+  int bufferSize;
+
+  byte[] buf;
+  byte[] copyBuf;
+  ByteBuffer copyBuffer;
+
+  @Setup
+  public void setup() throws IOException {
+    byte[] file = getClass().getResourceAsStream(testFile).readAllBytes();
+    int copies = Math.max(1, size / file.length);
+    buf = new byte[copies * file.length];
+    for (int i = 0; i < copies; i++) {
+      System.arraycopy(file, 0, buf, i * file.length, file.length);
+    }
+    copyBuf = new byte[bufferSize];
+    copyBuffer = ByteBuffer.allocateDirect(bufferSize);
+  }
+
+  private long copy(InputStream in) throws IOException {
+    long total = 0;
+    int n;
+    while ((n = in.read(copyBuf)) >= 0) {
+      total += n;
+    }
+    return total;
+  }
+
+  private long copy(ReadableByteChannel channel) throws IOException {
+    long total = 0;
+    int n;
+    while ((n = channel.read(copyBuffer.clear())) >= 0) {
+      total += n;
+    }
+    return total;
+  }
+
+  @Benchmark
+  public long plain_stream() throws IOException {
+    return copy(new ByteArrayInputStream(buf));
+  }
+
+  @Benchmark
+  public long vector_256_stream() throws IOException {
+    return copy(new Utf8ValidatingInputStream(new ByteArrayInputStream(buf), LUTS_256));
+  }
+
+  @Benchmark
+  public long plain_channel() throws IOException {
+    return copy(Channels.newChannel(new ByteArrayInputStream(buf)));
+  }
+
+  @Benchmark
+  public long vector_256_channel() throws IOException {
+    return copy(new Utf8ValidatingChannel(Channels.newChannel(new ByteArrayInputStream(buf)), LUTS_256));
+  }
+
+}
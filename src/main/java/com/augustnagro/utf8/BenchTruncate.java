@@ -0,0 +1,74 @@
+package com.augustnagro.utf8;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of truncating the start of a test file to a byte or code point
+ * limit, like an index key, against walking back from the limit and
+ * validating the prefix one byte at a time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(time = 1, iterations = 1)
+@Fork(
+  value = 1, warmups = 1,
+  jvmArgsPrepend = {
+    "--enable-preview",
+    "--add-modules=jdk.incubator.vector",
+  }
+)
+public class BenchTruncate {
+
+  private static final LookupTables LUTS_256 = new LookupTables256();
+
+  @Param({"/twitter.json", "/utf8-demo.txt"})
+  String testFile;
+
+  @Param({"16", "64", "255", "1024", "4096"})
+  int limit;
+
+  byte[] buf;
+
+  @Setup
+  public void setup() throws IOException {
+    buf = getClass().getResourceAsStream(testFile).readAllBytes();
+  }
+
+  @Benchmark
+  public int scalar_bytes() {
+    int cut = Math.min(buf.length, limit);
+    while (cut > 0 && cut < buf.length && (buf[cut] & 0b11000000) == 0b10000000) {
+      cut--;
+    }
+    return Utf8.scalarValidUtf8(0, cut, buf) ? cut : -1;
+  }
+
+  @Benchmark
+  public int vector_bytes_256() {
+    return Utf8.truncateToBoundary(buf, 0, buf.length, limit, LUTS_256);
+  }
+
+  @Benchmark
+  public int scalar_codePoints() {
+    int codePoints = 0;
+    int cut = 0;
+    while (cut < buf.length && (codePoints < limit || (buf[cut] & 0b11000000) == 0b10000000)) {
+      if ((buf[cut] & 0b11000000) != 0b10000000) {
+        codePoints++;
+      }
+      cut++;
+    }
+    return Utf8.scalarValidUtf8(0, cut, buf) ? cut : -1;
+  }
+
+  @Benchmark
+  public int vector_codePoints_256() {
+    return Utf8.truncateToCodePoints(buf, 0, buf.length, limit, LUTS_256);
+  }
+
+}
@@ -0,0 +1,77 @@
+package com.augustnagro.utf8;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+
+/*
+  Utf16.isWellFormed at each vector length against the scalar loop, on the
+  test files decoded to a char[], a String, and a direct CharBuffer.
+ */
+@BenchmarkMode(Mode.Throughput)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(time = 1, iterations = 1)
+@Fork(
+  value = 1, warmups = 1,
+  jvmArgsPrepend = {
+    "--enable-preview",
+    "--add-modules=jdk.incubator.vector",
+  }
+)
+public class BenchUtf16 {
+
+  private static final LookupTables LUTS_128 = new LookupTables128();
+  private static final LookupTables LUTS_256 = new LookupTables256();
+  private static final LookupTables LUTS_512 = new LookupTables512();
+
+  @Param({"/twitter.json", "/utf8-demo.txt"})
+  String testFile;
+
+  String str;
+  char[] chars;
+  CharBuffer direct;
+
+  @Setup
+  public void setup() throws IOException {
+    str = new String(getClass().getResourceAsStream(testFile).readAllBytes(), StandardCharsets.UTF_8);
+    chars = str.toCharArray();
+    direct = ByteBuffer.allocateDirect(2 * chars.length).order(ByteOrder.nativeOrder()).asCharBuffer();
+    direct.put(chars).flip();
+  }
+
+  @Benchmark
+  public boolean scalar() {
+    return Utf16.scalarIsWellFormed(chars, 0, chars.length);
+  }
+
+  @Benchmark
+  public boolean vector_512() {
+    return Utf16.isWellFormed(chars, 0, chars.length, LUTS_512);
+  }
+
+  @Benchmark
+  public boolean vector_256() {
+    return Utf16.isWellFormed(chars, 0, chars.length, LUTS_256);
+  }
+
+  @Benchmark
+  public boolean vector_128() {
+    return Utf16.isWellFormed(chars, 0, chars.length, LUTS_128);
+  }
+
+  @Benchmark
+  public boolean vector_256_string() {
+    return Utf16.isWellFormed(str, LUTS_256);
+  }
+
+  @Benchmark
+  public boolean vector_256_direct_buffer() {
+    return Utf16.isWellFormed(direct, LUTS_256);
+  }
+
+}
@@ -0,0 +1,76 @@
+package com.augustnagro.utf8;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+
+/*
+  The Modified UTF-8, CESU-8 and WTF-8 validators against their scalar
+  loops, on the mixed script mix in each encoding. utf8_vector is the
+  UTF-8 kernel on the same text in UTF-8, for the cost of the extra checks.
+ */
+@BenchmarkMode(Mode.Throughput)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(time = 1, iterations = 1)
+@Fork(
+  value = 1, warmups = 1,
+  jvmArgsPrepend = {
+    "--enable-preview",
+    "--add-modules=jdk.incubator.vector",
+  }
+)
+public class BenchVariants {
+
+  @Param({"256", "65536", "1048576"})
+  int size;
+
+  byte[] utf8;
+  byte[] modifiedUtf8;
+  byte[] cesu8;
+  byte[] wtf8;
+
+  @Setup
+  public void setup() throws IOException {
+    utf8 = Corpus.generate("mixed", size, 42);
+    modifiedUtf8 = Corpus.generate("mutf8", size, 42);
+    cesu8 = Corpus.generate("cesu8", size, 42);
+    wtf8 = Corpus.generate("wtf8", size, 42);
+  }
+
+  @Benchmark
+  public boolean utf8_vector() {
+    return Utf8VectorPreferred.validate(utf8);
+  }
+
+  @Benchmark
+  public boolean modifiedUtf8_scalar() {
+    return ModifiedUtf8.scalarValid(0, modifiedUtf8.length, modifiedUtf8);
+  }
+
+  @Benchmark
+  public boolean modifiedUtf8_vector() {
+    return ModifiedUtf8.validate(modifiedUtf8);
+  }
+
+  @Benchmark
+  public boolean cesu8_scalar() {
+    return Cesu8.scalarValid(0, cesu8.length, cesu8);
+  }
+
+  @Benchmark
+  public boolean cesu8_vector() {
+    return Cesu8.validate(cesu8);
+  }
+
+  @Benchmark
+  public boolean wtf8_scalar() {
+    return Wtf8.scalarValid(0, wtf8.length, wtf8);
+  }
+
+  @Benchmark
+  public boolean wtf8_vector() {
+    return Wtf8.validate(wtf8);
+  }
+
+}
@@ -0,0 +1,160 @@
+package com.augustnagro.utf8;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.Vector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Objects;
+
+import static jdk.incubator.vector.VectorOperators.*;
+
+/**
+ * Validates CESU-8 (Unicode Technical Report #26), in which chars above
+ * U+FFFF are encoded as a surrogate pair of 3 bytes each, as in UTF-16.
+ * 4-byte sequences are errors, and so is a surrogate that is not part of
+ * a pair.
+ * <p>
+ * The kernel is that of {@link Utf8VectorPreferred}, with lookup tables that
+ * allow surrogates and reject F_ leads. Each non-ascii block also checks that
+ * every high surrogate is followed by a low surrogate, and every low
+ * surrogate follows a high one. A high surrogate at the end of a block whose
+ * low surrogate would start the next block is treated like an incomplete
+ * char, so an ascii block after it is an error.
+ */
+public final class Cesu8 {
+  private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+  private static final ByteVector BYTE1_HIGH_LOOKUP = Util.buildByte1HighLookup(SPECIES, true, false);
+  private static final ByteVector BYTE1_LOW_LOOKUP = Util.buildByte1LowLookup(SPECIES);
+  private static final ByteVector BYTE2_HIGH_LOOKUP = Util.buildByte2HighLookup(SPECIES);
+  private static final ByteVector IS_INCOMPLETE_AND = Util.buildIsIncompleteAnd(SPECIES);
+  private static final ByteVector IS_INCOMPLETE_EQ = Util.buildIsIncompleteEq(SPECIES);
+
+  /*
+  Lanes of the second byte of a high surrogate whose low surrogate is in the
+  next block: the 3rd and 2nd to last. In the last lane, the high surrogate is
+  an incomplete char. Built from lane indexes, since VectorMask.fromLong only
+  reaches 64 lanes and SPECIES_PREFERRED may have more.
+   */
+  private static final VectorMask<Byte> HIGH_SURROGATE_PENDING =
+      SPECIES.indexInRange(-(SPECIES.length() - 3), 2);
+
+  private Cesu8() {}
+
+  /**
+   * Returns true if buf is valid CESU-8.
+   */
+  public static boolean validate(byte[] buf) {
+    return validate(buf, 0, buf.length);
+  }
+
+  /**
+   * Returns true if buf[off, off + len) is valid CESU-8.
+   */
+  public static boolean validate(byte[] buf, int off, int len) {
+    Objects.checkFromIndexSize(off, len, buf.length);
+    int end = off + len;
+
+    ByteVector error = ByteVector.zero(SPECIES);
+    boolean prevIncomplete = false;
+    ByteVector prevInputBlock = ByteVector.zero(SPECIES);
+
+    int i = off;
+    for (; i < off + SPECIES.loopBound(len); i += SPECIES.length()) {
+      ByteVector input = ByteVector.fromArray(SPECIES, buf, i);
+      if (!input.test(IS_NEGATIVE).anyTrue()) {
+        if (prevIncomplete) {
+          return false;
+        }
+      } else {
+        ByteVector prev1 = prevInputBlock.slice(SPECIES.length() - 1, input);
+        ByteVector prev2 = prevInputBlock.slice(SPECIES.length() - 2, input);
+        ByteVector prev3 = prevInputBlock.slice(SPECIES.length() - 3, input);
+        VectorMask<Byte> is3ByteCont = prev2.lanewise(AND, (byte) 0b11100000).compare(EQ, (byte) 0b11100000);
+        VectorMask<Byte> is4ByteCont = prev3.lanewise(AND, (byte) 0b11110000).compare(EQ, (byte) 0b11110000);
+        Vector<Byte> markedContinuations =
+            is3ByteCont.or(is4ByteCont).toVector().lanewise(AND, (byte) 0x80);
+        ByteVector byte1High = prev1.lanewise(LSHR, 4).selectFrom(BYTE1_HIGH_LOOKUP);
+        ByteVector byte1Low = prev1.lanewise(AND, (byte) 0x0f).selectFrom(BYTE1_LOW_LOOKUP);
+        ByteVector byte2High = input.lanewise(LSHR, 4).selectFrom(BYTE2_HIGH_LOOKUP);
+        ByteVector specialCases = byte1High.lanewise(AND, byte1Low).lanewise(AND, byte2High);
+        error = error.lanewise(OR, markedContinuations.lanewise(XOR, specialCases));
+
+        /*
+        A low surrogate's second byte (ED B_) must come exactly 4 bytes after
+        a high surrogate's first (ED A_), and the reverse.
+         */
+        ByteVector prev4 = prevInputBlock.slice(SPECIES.length() - 4, input);
+        VectorMask<Byte> prev1IsEd = prev1.compare(EQ, (byte) 0xed);
+        VectorMask<Byte> afterHigh = prev4.compare(EQ, (byte) 0xed)
+            .and(prev3.lanewise(AND, (byte) 0b11110000).compare(EQ, (byte) 0b10100000));
+        VectorMask<Byte> isLow = prev1IsEd
+            .and(input.lanewise(AND, (byte) 0b11110000).compare(EQ, (byte) 0b10110000));
+        error = error.lanewise(OR, afterHigh.xor(isLow).toVector());
+
+        VectorMask<Byte> isHigh = prev1IsEd
+            .and(input.lanewise(AND, (byte) 0b11110000).compare(EQ, (byte) 0b10100000));
+        prevIncomplete = input.lanewise(AND, IS_INCOMPLETE_AND).compare(EQ, IS_INCOMPLETE_EQ)
+            .or(isHigh.and(HIGH_SURROGATE_PENDING))
+            .anyTrue();
+        prevInputBlock = input;
+      }
+    }
+    if (i == off) {
+      return scalarValid(off, end, buf);
+    }
+    if (!error.test(IS_DEFAULT).allTrue()) {
+      return false;
+    }
+    int start = Utf8.backUpToLeadingByte(buf, off, i);
+    return scalarValid(Utf8.backUpToHighSurrogate(buf, off, start), end, buf);
+  }
+
+  /**
+   * Returns true if buf[pos, end) is valid CESU-8.
+   */
+  public static boolean scalarValid(int pos, int end, byte[] buf) {
+    while (pos < end) {
+      int byteVal = buf[pos] & 0xff;
+      if (byteVal < 0b10000000) {
+        pos++;
+      } else if ((byteVal & 0b11100000) == 0b11000000) {
+        if (pos + 2 > end || (buf[pos + 1] & 0b11000000) != 0b10000000) {
+          return false;
+        }
+        int codePoint = ((byteVal & 0b00011111) << 6) | (buf[pos + 1] & 0b00111111);
+        if (codePoint < 0x80) {
+          return false;
+        }
+        pos += 2;
+      } else if ((byteVal & 0b11110000) == 0b11100000) {
+        if (pos + 3 > end
+            || (buf[pos + 1] & 0b11000000) != 0b10000000
+            || (buf[pos + 2] & 0b11000000) != 0b10000000) {
+          return false;
+        }
+        int codePoint = ((byteVal & 0b00001111) << 12)
+            | ((buf[pos + 1] & 0b00111111) << 6)
+            | (buf[pos + 2] & 0b00111111);
+        if (codePoint < 0x800 || Character.isLowSurrogate((char) codePoint)) {
+          return false;
+        }
+        if (Character.isHighSurrogate((char) codePoint)) {
+          // the low surrogate must follow; its last byte is checked like any other
+          if (pos + 6 > end
+              || buf[pos + 3] != (byte) 0xed
+              || (buf[pos + 4] & 0b11110000) != 0b10110000
+              || (buf[pos + 5] & 0b11000000) != 0b10000000) {
+            return false;
+          }
+          pos += 3;
+        }
+        pos += 3;
+      } else {
+        // a continuation byte, or a 4-byte lead
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,177 @@
+package com.augustnagro.utf8;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+/**
+ * Deterministic benchmark inputs: synthetic text in a script mix, or a
+ * resource file repeated, with an optional error.
+ */
+final class Corpus {
+
+  private Corpus() {}
+
+  /**
+   * Returns size bytes of valid UTF-8 for the given corpus, which is either
+   * the name of a script mix (ascii, latin, cyrillic, cjk, emoji, mixed) or
+   * a resource path starting with '/'. The same arguments always give the
+   * same bytes.
+   * <p>
+   * The mutf8, cesu8 and wtf8 corpora are the mixed script mix in
+   * {@link ModifiedUtf8}, {@link Cesu8} and {@link Wtf8} instead of UTF-8,
+   * with about 1% NUL in mutf8 and 1% unpaired surrogates in wtf8.
+   */
+  static byte[] generate(String corpus, int size, long seed) throws IOException {
+    if (corpus.startsWith("/")) {
+      return repeatResource(corpus, size);
+    }
+    Random random = new Random(seed ^ corpus.hashCode() ^ size);
+    byte[] buf = new byte[size];
+    int pos = 0;
+    while (true) {
+      int codePoint = nextCodePoint(corpus, random);
+      int length = encodedLength(corpus, codePoint);
+      if (pos + length > size) {
+        break;
+      }
+      pos = encode(corpus, codePoint, buf, pos);
+    }
+    // pad with spaces when the last char does not fit
+    while (pos < size) {
+      buf[pos++] = ' ';
+    }
+    return buf;
+  }
+
+  /**
+   * Makes buf invalid by replacing the char around the given position with
+   * 0xFF, which is never valid UTF-8. The position is one of
+   * none, start, middle or end.
+   */
+  static void injectError(byte[] buf, String errorPosition) {
+    int i = switch (errorPosition) {
+      case "none" -> -1;
+      case "start" -> 0;
+      case "middle" -> buf.length / 2;
+      case "end" -> buf.length - 1;
+      default -> throw new IllegalArgumentException(errorPosition);
+    };
+    if (i >= 0 && buf.length > 0) {
+      buf[i] = (byte) 0xff;
+    }
+  }
+
+  /*
+  Code points in the style of each script. Every mix has some ascii spaces
+  and punctuation, like real text.
+   */
+  private static int nextCodePoint(String corpus, Random random) {
+    int r = random.nextInt(100);
+    return switch (corpus) {
+      case "ascii" -> r < 15 ? ' ' : r < 17 ? '\n' : 0x21 + random.nextInt(0x5e);
+      // mostly ascii letters with accented Latin-1 and Latin Extended-A
+      case "latin" -> r < 15 ? ' ' : r < 75 ? 'a' + random.nextInt(26) : 0xc0 + random.nextInt(0xc0);
+      case "cyrillic" -> r < 15 ? ' ' : r < 18 ? '.' : 0x410 + random.nextInt(0x40);
+      case "cjk" -> r < 8 ? 0x3001 + random.nextInt(2) : r < 12 ? ' ' : 0x4e00 + random.nextInt(0x5200);
+      // chat: ascii words, emoji, and some other symbols
+      case "emoji" -> r < 15 ? ' '
+          : r < 60 ? 'a' + random.nextInt(26)
+          : r < 90 ? 0x1f300 + random.nextInt(0x350)
+          : 0x2600 + random.nextInt(0x100);
+      case "mixed" -> nextCodePoint(new String[] {"ascii", "latin", "cyrillic", "cjk", "emoji"}[r % 5], random);
+      case "mutf8" -> r < 1 ? 0 : nextCodePoint("mixed", random);
+      case "cesu8" -> nextCodePoint("mixed", random);
+      case "wtf8" -> r < 1 ? 0xd800 + random.nextInt(0x800) : nextCodePoint("mixed", random);
+      default -> throw new IllegalArgumentException(corpus);
+    };
+  }
+
+  private static int encodedLength(String corpus, int codePoint) {
+    boolean surrogatePairs = corpus.equals("mutf8") || corpus.equals("cesu8");
+    if (Character.isSupplementaryCodePoint(codePoint)) {
+      return surrogatePairs ? 6 : 4;
+    } else if (isSurrogate(codePoint)) {
+      // followed by a space, so that it never pairs with the next char
+      return 4;
+    } else if (codePoint == 0 && corpus.equals("mutf8")) {
+      return 2;
+    } else {
+      return codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : 3;
+    }
+  }
+
+  private static int encode(String corpus, int codePoint, byte[] buf, int pos) {
+    boolean surrogatePairs = corpus.equals("mutf8") || corpus.equals("cesu8");
+    if (Character.isSupplementaryCodePoint(codePoint) && surrogatePairs) {
+      pos = encode(Character.highSurrogate(codePoint), buf, pos);
+      return encode(Character.lowSurrogate(codePoint), buf, pos);
+    } else if (isSurrogate(codePoint)) {
+      pos = encode(codePoint, buf, pos);
+      buf[pos++] = ' ';
+      return pos;
+    } else if (codePoint == 0 && corpus.equals("mutf8")) {
+      buf[pos++] = (byte) 0xc0;
+      buf[pos++] = (byte) 0x80;
+      return pos;
+    } else {
+      return encode(codePoint, buf, pos);
+    }
+  }
+
+  private static boolean isSurrogate(int codePoint) {
+    return Character.MIN_SURROGATE <= codePoint && codePoint <= Character.MAX_SURROGATE;
+  }
+
+  private static int encode(int codePoint, byte[] buf, int pos) {
+    if (codePoint < 0x80) {
+      buf[pos++] = (byte) codePoint;
+    } else if (codePoint < 0x800) {
+      buf[pos++] = (byte) (0b11000000 | (codePoint >> 6));
+      buf[pos++] = (byte) (0b10000000 | (codePoint & 0b00111111));
+    } else if (codePoint < 0x10000) {
+      buf[pos++] = (byte) (0b11100000 | (codePoint >> 12));
+      buf[pos++] = (byte) (0b10000000 | ((codePoint >> 6) & 0b00111111));
+      buf[pos++] = (byte) (0b10000000 | (codePoint & 0b00111111));
+    } else {
+      buf[pos++] = (byte) (0b11110000 | (codePoint >> 18));
+      buf[pos++] = (byte) (0b10000000 | ((codePoint >> 12) & 0b00111111));
+      buf[pos++] = (byte) (0b10000000 | ((codePoint >> 6) & 0b00111111));
+      buf[pos++] = (byte) (0b10000000 | (codePoint & 0b00111111));
+    }
+    return pos;
+  }
+
+  /*
+  The resource repeated or truncated to size bytes, cut at a char boundary
+  and padded with spaces. utf8-demo-invalid.txt keeps its error.
+   */
+  private static byte[] repeatResource(String path, int size) throws IOException {
+    byte[] file;
+    try (InputStream in = Corpus.class.getResourceAsStream(path)) {
+      if (in == null) {
+        throw new IllegalArgumentException("no resource " + path);
+      }
+      file = in.readAllBytes();
+    }
+    byte[] buf = new byte[size];
+    for (int i = 0; i < size; i += file.length) {
+      System.arraycopy(file, 0, buf, i, Math.min(file.length, size - i));
+    }
+    int end = size;
+    for (int j = 1; j <= 3 && size - j >= 0; j++) {
+      int b = buf[size - j] & 0xff;
+      if ((b & 0b11000000) != 0b10000000) {
+        int length = b >= 0xf0 ? 4 : b >= 0xe0 ? 3 : b >= 0xc0 ? 2 : 1;
+        if (length > j) {
+          end = size - j;
+        }
+        break;
+      }
+    }
+    for (int i = end; i < size; i++) {
+      buf[i] = ' ';
+    }
+    return buf;
+  }
+}
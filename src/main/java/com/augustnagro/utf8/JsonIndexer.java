@@ -0,0 +1,204 @@
+package com.augustnagro.utf8;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.Vector;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import static jdk.incubator.vector.VectorOperators.*;
+
+/**
+ * The first stage of a JSON parser, in the style of simdjson: finds the
+ * structural characters <code>{}[]:,</code> outside of strings, and the quotes that
+ * start and end strings, while validating UTF-8 in the same pass.
+ * <p>
+ * The input is read in blocks of 64 bytes, so that each kind of character
+ * in a block is a bit in a long. Which quotes are escaped, and which bytes
+ * are inside a string, is then found with integer arithmetic on those
+ * longs, carrying one bit of state from block to block. A vector shape
+ * with more than 64 byte lanes does not fit in a block, so with such a
+ * {@link LookupTables}, like {@link LookupTablesMax} on wide SVE, input is
+ * indexed by {@link #scalarIndex} instead.
+ */
+public final class JsonIndexer {
+
+  private static final int BLOCK = 64;
+  private static final long EVEN_BITS = 0x5555555555555555L;
+
+  private JsonIndexer() {}
+
+  /**
+   * Returns the indexes in buf of the structural characters and string
+   * quotes in buf[off, off + len), in order, or null if it is not valid
+   * UTF-8 or ends inside a string.
+   */
+  public static int[] index(byte[] buf, int off, int len, LookupTables lut) {
+    Objects.checkFromIndexSize(off, len, buf.length);
+    int end = off + len;
+    VectorSpecies<Byte> species = lut.species();
+    // the lanes of each vector are collected into a long with VectorMask.toLong
+    if (species.length() > BLOCK) {
+      return scalarIndex(buf, off, len);
+    }
+    ByteVector isIncompleteAnd = lut.isIncompleteAnd();
+    ByteVector isIncompleteEq = lut.isIncompleteEq();
+
+    ByteVector error = ByteVector.zero(species);
+    Vector<Byte> prevIncomplete = ByteVector.zero(species);
+    ByteVector prevInputBlock = ByteVector.zero(species);
+    // 1 if the last block ended with an odd run of backslashes
+    long prevEscaped = 0;
+    // all ones if the last block ended inside a string
+    long prevInString = 0;
+
+    int[] indexes = new int[Math.max(16, len >>> 3)];
+    int size = 0;
+
+    /*
+    Two passes over the same loop: the full blocks of buf, then the last
+    partial block, copied into one padded with spaces. Spaces are not
+    structural and are valid UTF-8, so there is no scalar tail, and an
+    incomplete char at the end of buf is followed by a space, which the
+    UTF-8 check rejects. shift turns a position in src into one in buf.
+     */
+    byte[] src = buf;
+    int from = off;
+    int to = off + (len & -BLOCK);
+    int shift = 0;
+    while (true) {
+      for (int pos = from; pos < to; pos += BLOCK) {
+        long backslashes = 0;
+        long quotes = 0;
+        long ops = 0;
+        for (int k = 0; k < BLOCK; k += species.length()) {
+          ByteVector input = ByteVector.fromArray(species, src, pos + k);
+          backslashes |= input.eq((byte) '\\').toLong() << k;
+          quotes |= input.eq((byte) '"').toLong() << k;
+          // '[' and ']' are '{' and '}' without the 0x20 bit
+          ByteVector lower = input.or((byte) 0x20);
+          ops |= lower.eq((byte) '{').or(lower.eq((byte) '}'))
+              .or(input.eq((byte) ':')).or(input.eq((byte) ','))
+              .toLong() << k;
+
+          if (!input.test(IS_NEGATIVE).anyTrue()) {
+            error = error.or(prevIncomplete);
+          } else {
+            error = error.or(Utf8.testUtf8(input, prevInputBlock, lut));
+            prevIncomplete = input.and(isIncompleteAnd).eq(isIncompleteEq).toVector();
+            prevInputBlock = input;
+          }
+        }
+
+        /*
+        A char is escaped if it follows an odd run of backslashes, in or out
+        of a string. As in simdjson, adding the first bit of each run that
+        starts on an odd bit carries it past the run, after which the escaped
+        chars of every run sit on bits of the same parity, and one alternating
+        mask picks them. A carry out of bit 63 means the next block starts
+        escaped.
+         */
+        backslashes &= ~prevEscaped;
+        long followsEscape = backslashes << 1 | prevEscaped;
+        long oddStarts = backslashes & ~EVEN_BITS & ~followsEscape;
+        long evenStarts = oddStarts + backslashes;
+        prevEscaped = Long.compareUnsigned(evenStarts, backslashes) < 0 ? 1 : 0;
+        long escaped = (EVEN_BITS ^ (evenStarts << 1)) & followsEscape;
+
+        // bits from an opening quote up to, not including, its closing quote
+        quotes &= ~escaped;
+        long inString = prefixXor(quotes) ^ prevInString;
+        prevInString = inString >> 63;
+
+        long structurals = (ops & ~inString) | quotes;
+        int count = Long.bitCount(structurals);
+        // room for up to 3 extra writes past count
+        if (size + count + 3 >= indexes.length) {
+          indexes = Arrays.copyOf(indexes, Math.max(2 * indexes.length, size + count + 4));
+        }
+        /*
+        Writes 4 indexes per iteration whether or not there are that many
+        bits left, as simdjson does, so the loop exit is mispredicted once
+        per 4 structurals instead of once per block with many. The extra
+        indexes are overwritten by the next block or cut off at the end.
+         */
+        int base = shift + pos;
+        int p = size;
+        while (structurals != 0) {
+          indexes[p] = base + Long.numberOfTrailingZeros(structurals);
+          structurals &= structurals - 1;
+          indexes[p + 1] = base + Long.numberOfTrailingZeros(structurals);
+          structurals &= structurals - 1;
+          indexes[p + 2] = base + Long.numberOfTrailingZeros(structurals);
+          structurals &= structurals - 1;
+          indexes[p + 3] = base + Long.numberOfTrailingZeros(structurals);
+          structurals &= structurals - 1;
+          p += 4;
+        }
+        size += count;
+      }
+      if (to == end || src != buf) {
+        break;
+      }
+      src = new byte[BLOCK];
+      Arrays.fill(src, (byte) ' ');
+      System.arraycopy(buf, to, src, 0, end - to);
+      shift = to;
+      from = 0;
+      to = BLOCK;
+    }
+
+    error = error.or(prevIncomplete);
+    if (!error.test(IS_DEFAULT).allTrue() || prevInString != 0) {
+      return null;
+    }
+    return Arrays.copyOf(indexes, size);
+  }
+
+  /*
+  Bit i of the result is the xor of bits 0 to i of x.
+   */
+  private static long prefixXor(long x) {
+    x ^= x << 1;
+    x ^= x << 2;
+    x ^= x << 4;
+    x ^= x << 8;
+    x ^= x << 16;
+    x ^= x << 32;
+    return x;
+  }
+
+  /**
+   * Same as {@link #index(byte[], int, int, LookupTables)}, one byte at a
+   * time, with UTF-8 checked by {@link Utf8#scalarValidUtf8(int, int, byte[])}.
+   */
+  public static int[] scalarIndex(byte[] buf, int off, int len) {
+    Objects.checkFromIndexSize(off, len, buf.length);
+    int end = off + len;
+    if (!Utf8.scalarValidUtf8(off, end, buf)) {
+      return null;
+    }
+    int[] indexes = new int[Math.max(16, len >>> 3)];
+    int size = 0;
+    boolean inString = false;
+    boolean escaped = false;
+    for (int i = off; i < end; i++) {
+      byte b = buf[i];
+      boolean structural = b == '"' && !escaped;
+      if (structural) {
+        inString = !inString;
+      } else if (!inString) {
+        structural = b == '{' || b == '}' || b == '[' || b == ']' || b == ':' || b == ',';
+      }
+      if (structural) {
+        if (size == indexes.length) {
+          indexes = Arrays.copyOf(indexes, 2 * size);
+        }
+        indexes[size++] = i;
+      }
+      escaped = b == '\\' && !escaped;
+    }
+    return inString ? null : Arrays.copyOf(indexes, size);
+  }
+}
@@ -0,0 +1,135 @@
+package com.augustnagro.utf8;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.Vector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Objects;
+
+import static jdk.incubator.vector.VectorOperators.*;
+
+/**
+ * Validates Modified UTF-8, the encoding of {@link java.io.DataInput#readUTF()},
+ * JNI strings and class file constants. It differs from UTF-8 in that:
+ * <ul>
+ *   <li>NUL is encoded as C0 80, and a 0 byte is an error;</li>
+ *   <li>chars above U+FFFF are encoded as two surrogates of 3 bytes each,
+ *   so 4-byte sequences are errors;</li>
+ *   <li>surrogates need not be paired, since a String's chars are encoded
+ *   one at a time.</li>
+ * </ul>
+ * The kernel is that of {@link Utf8VectorPreferred}, with lookup tables that
+ * allow surrogates and C0, and reject F_ leads. Two more checks run on each
+ * non-ascii block: for 0 bytes, and for C0 followed by anything but 80.
+ * The ascii shortcut skips blocks with no byte at or below 0, so it also
+ * sees 0 bytes.
+ */
+public final class ModifiedUtf8 {
+  private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+  private static final ByteVector BYTE1_HIGH_LOOKUP = Util.buildByte1HighLookup(SPECIES, true, false);
+  private static final ByteVector BYTE1_LOW_LOOKUP = Util.buildByte1LowLookup(SPECIES, true);
+  private static final ByteVector BYTE2_HIGH_LOOKUP = Util.buildByte2HighLookup(SPECIES);
+  private static final ByteVector IS_INCOMPLETE_AND = Util.buildIsIncompleteAnd(SPECIES);
+  private static final ByteVector IS_INCOMPLETE_EQ = Util.buildIsIncompleteEq(SPECIES);
+
+  private ModifiedUtf8() {}
+
+  /**
+   * Returns true if buf is valid Modified UTF-8.
+   */
+  public static boolean validate(byte[] buf) {
+    return validate(buf, 0, buf.length);
+  }
+
+  /**
+   * Returns true if buf[off, off + len) is valid Modified UTF-8.
+   */
+  public static boolean validate(byte[] buf, int off, int len) {
+    Objects.checkFromIndexSize(off, len, buf.length);
+    int end = off + len;
+
+    ByteVector error = ByteVector.zero(SPECIES);
+    boolean prevIncomplete = false;
+    ByteVector prevInputBlock = ByteVector.zero(SPECIES);
+
+    int i = off;
+    for (; i < off + SPECIES.loopBound(len); i += SPECIES.length()) {
+      ByteVector input = ByteVector.fromArray(SPECIES, buf, i);
+      if (!input.compare(LE, (byte) 0).anyTrue()) {
+        if (prevIncomplete) {
+          return false;
+        }
+      } else {
+        ByteVector prev1 = prevInputBlock.slice(SPECIES.length() - 1, input);
+        ByteVector prev2 = prevInputBlock.slice(SPECIES.length() - 2, input);
+        ByteVector prev3 = prevInputBlock.slice(SPECIES.length() - 3, input);
+        VectorMask<Byte> is3ByteCont = prev2.lanewise(AND, (byte) 0b11100000).compare(EQ, (byte) 0b11100000);
+        VectorMask<Byte> is4ByteCont = prev3.lanewise(AND, (byte) 0b11110000).compare(EQ, (byte) 0b11110000);
+        Vector<Byte> markedContinuations =
+            is3ByteCont.or(is4ByteCont).toVector().lanewise(AND, (byte) 0x80);
+        ByteVector byte1High = prev1.lanewise(LSHR, 4).selectFrom(BYTE1_HIGH_LOOKUP);
+        ByteVector byte1Low = prev1.lanewise(AND, (byte) 0x0f).selectFrom(BYTE1_LOW_LOOKUP);
+        ByteVector byte2High = input.lanewise(LSHR, 4).selectFrom(BYTE2_HIGH_LOOKUP);
+        ByteVector specialCases = byte1High.lanewise(AND, byte1Low).lanewise(AND, byte2High);
+        error = error.lanewise(OR, markedContinuations.lanewise(XOR, specialCases));
+
+        // a 0 byte, or an overlong form other than C0 80
+        VectorMask<Byte> notModified = input.compare(EQ, (byte) 0)
+            .or(prev1.compare(EQ, (byte) 0xc0).andNot(input.compare(EQ, (byte) 0x80)));
+        error = error.lanewise(OR, notModified.toVector());
+
+        prevIncomplete = input.lanewise(AND, IS_INCOMPLETE_AND).compare(EQ, IS_INCOMPLETE_EQ).anyTrue();
+        prevInputBlock = input;
+      }
+    }
+    if (i == off) {
+      return scalarValid(off, end, buf);
+    }
+    if (!error.test(IS_DEFAULT).allTrue()) {
+      return false;
+    }
+    return scalarValid(Utf8.backUpToLeadingByte(buf, off, i), end, buf);
+  }
+
+  /**
+   * Returns true if buf[pos, end) is valid Modified UTF-8.
+   */
+  public static boolean scalarValid(int pos, int end, byte[] buf) {
+    while (pos < end) {
+      int byteVal = buf[pos] & 0xff;
+      if (byteVal == 0) {
+        return false;
+      } else if (byteVal < 0b10000000) {
+        pos++;
+      } else if ((byteVal & 0b11100000) == 0b11000000) {
+        if (pos + 2 > end || (buf[pos + 1] & 0b11000000) != 0b10000000) {
+          return false;
+        }
+        int codePoint = ((byteVal & 0b00011111) << 6) | (buf[pos + 1] & 0b00111111);
+        // NUL is the one overlong form allowed
+        if (codePoint < 0x80 && codePoint != 0) {
+          return false;
+        }
+        pos += 2;
+      } else if ((byteVal & 0b11110000) == 0b11100000) {
+        if (pos + 3 > end
+            || (buf[pos + 1] & 0b11000000) != 0b10000000
+            || (buf[pos + 2] & 0b11000000) != 0b10000000) {
+          return false;
+        }
+        int codePoint = ((byteVal & 0b00001111) << 12)
+            | ((buf[pos + 1] & 0b00111111) << 6)
+            | (buf[pos + 2] & 0b00111111);
+        if (codePoint < 0x800) {
+          return false;
+        }
+        pos += 3;
+      } else {
+        // a continuation byte, or a 4-byte lead
+        return false;
+      }
+    }
+    return true;
+  }
+}
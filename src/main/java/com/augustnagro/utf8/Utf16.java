@@ -0,0 +1,197 @@
+package com.augustnagro.utf8;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.util.Objects;
+
+import static java.lang.foreign.ValueLayout.JAVA_CHAR_UNALIGNED;
+import static jdk.incubator.vector.VectorOperators.*;
+
+/**
+ * Checks that UTF-16 is well-formed, meaning every high surrogate is
+ * followed by a low surrogate, and every low surrogate follows a high one.
+ * Such text can be encoded to UTF-8 without replacement.
+ * <p>
+ * Like {@link Utf8Encoder}, the methods only use the vector shape of the
+ * given {@link LookupTables}.
+ */
+public final class Utf16 {
+
+  /*
+  Strings and other CharSequences are copied into a char[] of at most this
+  many chars at a time, so they can be loaded into vectors.
+   */
+  private static final int CHUNK_LENGTH = 1024;
+
+  private Utf16() {}
+
+  /**
+   * Returns true if buf[off, off + len) has no unpaired surrogate.
+   */
+  public static boolean isWellFormed(char[] buf, int off, int len, LookupTables lut) {
+    Objects.checkFromIndexSize(off, len, buf.length);
+    VectorSpecies<Short> species = VectorSpecies.of(short.class, lut.species().vectorShape());
+    int end = off + len;
+    if (len == 0) {
+      return true;
+    }
+    // the first char has nothing before it to pair with
+    if (Character.isLowSurrogate(buf[off])) {
+      return false;
+    }
+
+    /*
+    A char must be a low surrogate exactly when the char before it is a high
+    surrogate. Instead of carrying the last block over and slicing it, like
+    prevInputBlock in Utf8.validate, a block with surrogates is compared with
+    the same block loaded one char earlier: ShortVector.slice is not fully
+    intrinsified and allocates. A block with no surrogates only needs the
+    char before it not to be a high surrogate.
+     */
+    int i = off + 1;
+    for (; i <= end - species.length(); i += species.length()) {
+      ShortVector input = ShortVector.fromCharArray(species, buf, i);
+      if (!input.lanewise(AND, (short) 0xf800).compare(EQ, (short) 0xd800).anyTrue()) {
+        if (Character.isHighSurrogate(buf[i - 1])) {
+          return false;
+        }
+      } else {
+        ShortVector prev = ShortVector.fromCharArray(species, buf, i - 1);
+        VectorMask<Short> afterHigh = prev.lanewise(AND, (short) 0xfc00).compare(EQ, (short) 0xd800);
+        VectorMask<Short> isLow = input.lanewise(AND, (short) 0xfc00).compare(EQ, (short) 0xdc00);
+        if (afterHigh.xor(isLow).anyTrue()) {
+          return false;
+        }
+      }
+    }
+    // a high surrogate at i - 1 is paired in the tail
+    if (Character.isHighSurrogate(buf[i - 1])) {
+      i--;
+    }
+    return scalarIsWellFormed(buf, i, end);
+  }
+
+  /**
+   * Returns true if src has no unpaired surrogate.
+   */
+  public static boolean isWellFormed(CharSequence src, LookupTables lut) {
+    int length = src.length();
+    char[] chunk = new char[Math.min(length, CHUNK_LENGTH)];
+    int i = 0;
+    while (i < length) {
+      int n = Math.min(length - i, chunk.length);
+      // don't split a surrogate pair between chunks
+      if (n > 1 && i + n < length && Character.isHighSurrogate(src.charAt(i + n - 1))) {
+        n--;
+      }
+      if (src instanceof String s) {
+        s.getChars(i, i + n, chunk, 0);
+      } else {
+        for (int j = 0; j < n; j++) {
+          chunk[j] = src.charAt(i + j);
+        }
+      }
+      if (!isWellFormed(chunk, 0, n, lut)) {
+        return false;
+      }
+      i += n;
+    }
+    return true;
+  }
+
+  /**
+   * Returns true if src has no unpaired surrogate between its position and
+   * limit. The position of src is not changed.
+   */
+  public static boolean isWellFormed(CharBuffer src, LookupTables lut) {
+    if (src.hasArray()) {
+      return isWellFormed(src.array(), src.arrayOffset() + src.position(), src.remaining(), lut);
+    } else if (src.isDirect()) {
+      return isWellFormed(MemorySegment.ofBuffer(src), src.order(), lut);
+    } else {
+      // read-only, or wrapping a CharSequence
+      return isWellFormed((CharSequence) src, lut);
+    }
+  }
+
+  /*
+  isWellFormed(char[], ...) for the chars of a direct CharBuffer.
+   */
+  private static boolean isWellFormed(MemorySegment seg, ByteOrder order, LookupTables lut) {
+    VectorSpecies<Short> species = VectorSpecies.of(short.class, lut.species().vectorShape());
+    boolean swap = order != ByteOrder.nativeOrder();
+    long end = seg.byteSize();
+    if (end == 0) {
+      return true;
+    }
+    if (Character.isLowSurrogate(charAt(seg, 0, swap))) {
+      return false;
+    }
+
+    long i = 2;
+    for (; i <= end - species.vectorByteSize(); i += species.vectorByteSize()) {
+      ShortVector input = ShortVector.fromMemorySegment(species, seg, i, order);
+      if (!input.lanewise(AND, (short) 0xf800).compare(EQ, (short) 0xd800).anyTrue()) {
+        if (Character.isHighSurrogate(charAt(seg, i - 2, swap))) {
+          return false;
+        }
+      } else {
+        ShortVector prev = ShortVector.fromMemorySegment(species, seg, i - 2, order);
+        VectorMask<Short> afterHigh = prev.lanewise(AND, (short) 0xfc00).compare(EQ, (short) 0xd800);
+        VectorMask<Short> isLow = input.lanewise(AND, (short) 0xfc00).compare(EQ, (short) 0xdc00);
+        if (afterHigh.xor(isLow).anyTrue()) {
+          return false;
+        }
+      }
+    }
+    if (Character.isHighSurrogate(charAt(seg, i - 2, swap))) {
+      i -= 2;
+    }
+    while (i < end) {
+      char c = charAt(seg, i, swap);
+      i += 2;
+      if (Character.isHighSurrogate(c)) {
+        if (i == end || !Character.isLowSurrogate(charAt(seg, i, swap))) {
+          return false;
+        }
+        i += 2;
+      } else if (Character.isLowSurrogate(c)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /*
+  A VarHandle for a layout with a byte order that is not a constant is slow,
+  so read in native order and swap.
+   */
+  private static char charAt(MemorySegment seg, long i, boolean swap) {
+    char c = seg.get(JAVA_CHAR_UNALIGNED, i);
+    return swap ? Character.reverseBytes(c) : c;
+  }
+
+  /**
+   * Returns true if buf[pos, end) has no unpaired surrogate, checking one
+   * char at a time.
+   */
+  public static boolean scalarIsWellFormed(char[] buf, int pos, int end) {
+    while (pos < end) {
+      char c = buf[pos++];
+      if (Character.isHighSurrogate(c)) {
+        if (pos == end || !Character.isLowSurrogate(buf[pos])) {
+          return false;
+        }
+        pos++;
+      } else if (Character.isLowSurrogate(c)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
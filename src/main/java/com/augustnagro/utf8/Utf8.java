@@ -6,20 +6,41 @@ import jdk.incubator.vector.VectorMask;
 import jdk.incubator.vector.VectorSpecies;
 
 import java.io.IOException;
-import java.nio.file.Files;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
 
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
 import static jdk.incubator.vector.VectorOperators.*;
 
 public class Utf8 {
   public static boolean scalarValidUtf8(int pos, byte[] byteArray) {
+    return scalarValidUtf8(pos, byteArray.length, byteArray);
+  }
+
+  /**
+   * Returns true if byteArray[pos, end) is valid UTF-8.
+   */
+  public static boolean scalarValidUtf8(int pos, int end, byte[] byteArray) {
+    if (Utf8Metrics.ENABLED) {
+      Utf8Metrics.scalarValidated(end - pos);
+    }
     int codePoint = 0;
     int nextPos;
-    while (pos < byteArray.length) {
+    while (pos < end) {
         int byteVal = byteArray[pos] & 0xff;
 
         while (byteVal < 0b10000000) {
-            if (++pos == byteArray.length) {
+            if (++pos == end) {
                 return true;
             }
             byteVal = byteArray[pos] & 0xff;
@@ -27,7 +48,7 @@ public class Utf8 {
 
         if ((byteVal & 0b11100000) == 0b11000000) {
             nextPos = pos + 2;
-            if (nextPos > byteArray.length) {
+            if (nextPos > end) {
                 return false;
             }
             if ((byteArray[pos + 1] & 0b11000000) != 0b10000000) {
@@ -40,7 +61,7 @@ public class Utf8 {
             }
         } else if ((byteVal & 0b11110000) == 0b11100000) {
             nextPos = pos + 3;
-            if (nextPos > byteArray.length) {
+            if (nextPos > end) {
                 return false;
             }
             if ((byteArray[pos + 1] & 0b11000000) != 0b10000000 || (byteArray[pos + 2] & 0b11000000) != 0b10000000) {
@@ -55,7 +76,7 @@ public class Utf8 {
             }
         } else if ((byteVal & 0b11111000) == 0b11110000) {
             nextPos = pos + 4;
-            if (nextPos > byteArray.length) {
+            if (nextPos > end) {
                 return false;
             }
             if ((byteArray[pos + 1] & 0b11000000) != 0b10000000
@@ -79,10 +100,108 @@ public class Utf8 {
     }
     return true;
   }
+
+  /**
+   * Same as {@link #scalarValidUtf8(int, byte[])}, but for the bytes of seg.
+   */
+  public static boolean scalarValidUtf8(long pos, MemorySegment seg) {
+    if (Utf8Metrics.ENABLED) {
+      Utf8Metrics.scalarValidated(seg.byteSize() - pos);
+    }
+    return scalarValidSegment(pos, seg);
+  }
+
+  private static boolean scalarValidSegment(long pos, MemorySegment seg) {
+    long length = seg.byteSize();
+    int codePoint = 0;
+    long nextPos;
+    while (pos < length) {
+      int byteVal = seg.get(JAVA_BYTE, pos) & 0xff;
+
+      while (byteVal < 0b10000000) {
+        if (++pos == length) {
+          return true;
+        }
+        byteVal = seg.get(JAVA_BYTE, pos) & 0xff;
+      }
+
+      if ((byteVal & 0b11100000) == 0b11000000) {
+        nextPos = pos + 2;
+        if (nextPos > length) {
+          return false;
+        }
+        int b1 = seg.get(JAVA_BYTE, pos + 1);
+        if ((b1 & 0b11000000) != 0b10000000) {
+          return false;
+        }
+        // Range check
+        codePoint = ((byteVal & 0b00011111) << 6) | (b1 & 0b00111111);
+        if ((codePoint < 0x80) || (0x7ff < codePoint)) {
+          return false;
+        }
+      } else if ((byteVal & 0b11110000) == 0b11100000) {
+        nextPos = pos + 3;
+        if (nextPos > length) {
+          return false;
+        }
+        int b1 = seg.get(JAVA_BYTE, pos + 1);
+        int b2 = seg.get(JAVA_BYTE, pos + 2);
+        if ((b1 & 0b11000000) != 0b10000000 || (b2 & 0b11000000) != 0b10000000) {
+          return false;
+        }
+        // Range check
+        codePoint = ((byteVal & 0b00001111) << 12)
+            | ((b1 & 0b00111111) << 6)
+            | (b2 & 0b00111111);
+        if ((codePoint < 0x800) || (0xffff < codePoint) || (0xd7ff < codePoint && codePoint < 0xe000)) {
+          return false;
+        }
+      } else if ((byteVal & 0b11111000) == 0b11110000) {
+        nextPos = pos + 4;
+        if (nextPos > length) {
+          return false;
+        }
+        int b1 = seg.get(JAVA_BYTE, pos + 1);
+        int b2 = seg.get(JAVA_BYTE, pos + 2);
+        int b3 = seg.get(JAVA_BYTE, pos + 3);
+        if ((b1 & 0b11000000) != 0b10000000
+            || (b2 & 0b11000000) != 0b10000000
+            || (b3 & 0b11000000) != 0b10000000) {
+          return false;
+        }
+        // Range check
+        codePoint = ((byteVal & 0b00000111) << 18)
+            | ((b1 & 0b00111111) << 12)
+            | ((b2 & 0b00111111) << 6)
+            | (b3 & 0b00111111);
+        if (codePoint <= 0xffff || 0x10ffff < codePoint) {
+          return false;
+        }
+      } else {
+        // We may have a continuation byte
+        return false;
+      }
+      pos = nextPos;
+    }
+    return true;
+  }
+
   /**
    * Returns true if buf is valid UTF-8.
    */
   public static boolean validate(byte[] buf, LookupTables lut) {
+    return validate(buf, 0, buf.length, lut);
+  }
+
+  /**
+   * Returns true if buf[off, off + len) is valid UTF-8.
+   */
+  public static boolean validate(byte[] buf, int off, int len, LookupTables lut) {
+    if (Utf8Metrics.ENABLED) {
+      return validateMetered(buf, off, len, lut);
+    }
+    Objects.checkFromIndexSize(off, len, buf.length);
+    int end = off + len;
     VectorSpecies<Byte> species = lut.species();
     ByteVector isIncompleteAnd = lut.isIncompleteAnd();
     ByteVector isIncompleteEq = lut.isIncompleteEq();
@@ -99,8 +218,8 @@ public class Utf8 {
     Vector<Byte> prevIncomplete = ByteVector.zero(species);
     ByteVector prevInputBlock = ByteVector.zero(species);
 
-    int i = 0;
-    for (; i < species.loopBound(buf.length); i += species.length()) {
+    int i = off;
+    for (; i < off + species.loopBound(len); i += species.length()) {
       ByteVector input = ByteVector.fromArray(species, buf, i);
 
       /*
@@ -130,34 +249,1045 @@ public class Utf8 {
       }
     }
     // if we did no SIMD processing, call the scalar routine
-    if(i == 0) {
-      return scalarValidUtf8(0, buf);
+    if(i == off) {
+      return Utf8Swar.validateRange(buf, off, end);
     }
     // if we caught an error, it ends there.
     if (!error.test(IS_DEFAULT).allTrue()) {
       return false;
     }
     // We may still have an error in the last few bytes.
-    // go back to the last complete char
-    boolean foundLeadingBytes = false;
-    for (int j = 0; j <= 3; j++) {
-      byte candidateByte = buf[i - j];
-      foundLeadingBytes = (candidateByte & 0b11000000) != 0b10000000;
-      if (foundLeadingBytes) {
+    return Utf8Swar.validateRange(buf, backUpToLeadingByte(buf, off, i), end);
+  }
+
+  /*
+  A copy of validate(byte[], int, int, LookupTables) that updates
+  Utf8Metrics. It is separate so that the loop above has no extra
+  locals or branches when metrics are off.
+   */
+  private static boolean validateMetered(byte[] buf, int off, int len, LookupTables lut) {
+    Objects.checkFromIndexSize(off, len, buf.length);
+    int end = off + len;
+    VectorSpecies<Byte> species = lut.species();
+    ByteVector isIncompleteAnd = lut.isIncompleteAnd();
+    ByteVector isIncompleteEq = lut.isIncompleteEq();
+
+    ByteVector error = ByteVector.zero(species);
+    Vector<Byte> prevIncomplete = ByteVector.zero(species);
+    ByteVector prevInputBlock = ByteVector.zero(species);
+
+    Utf8ValidationEvent event = Utf8Metrics.beginEvent(len);
+    int asciiBlocks = 0;
+
+    int i = off;
+    for (; i < off + species.loopBound(len); i += species.length()) {
+      ByteVector input = ByteVector.fromArray(species, buf, i);
+      boolean isAscii = !input.test(IS_NEGATIVE).anyTrue();
+      if (isAscii) {
+        error = error.or(prevIncomplete);
+        asciiBlocks++;
+      } else {
+        error = error.or(testUtf8(input, prevInputBlock, lut));
+        prevIncomplete = input.and(isIncompleteAnd).eq(isIncompleteEq).toVector();
+        prevInputBlock = input;
+      }
+    }
+    boolean valid;
+    if (i == off) {
+      valid = Utf8Swar.validateRange(buf, off, end);
+    } else if (!error.test(IS_DEFAULT).allTrue()) {
+      valid = false;
+    } else {
+      valid = Utf8Swar.validateRange(buf, backUpToLeadingByte(buf, off, i), end);
+    }
+    Utf8Metrics.validated(event, species.length(), len, i - off, asciiBlocks, valid);
+    return valid;
+  }
+
+  /**
+   * Same as {@link #validate(byte[], int, int, LookupTables)}, but the last
+   * partial vector (or the whole input, if it is shorter than one vector) is
+   * loaded with a mask instead of being validated by scalar code.
+   * This is faster for short inputs on hardware with masked loads, like AVX-512.
+   */
+  public static boolean validateMasked(byte[] buf, int off, int len, LookupTables lut) {
+    Objects.checkFromIndexSize(off, len, buf.length);
+    int end = off + len;
+    VectorSpecies<Byte> species = lut.species();
+    ByteVector isIncompleteAnd = lut.isIncompleteAnd();
+    ByteVector isIncompleteEq = lut.isIncompleteEq();
+
+    ByteVector error = ByteVector.zero(species);
+    Vector<Byte> prevIncomplete = ByteVector.zero(species);
+    ByteVector prevInputBlock = ByteVector.zero(species);
+
+    int i = off;
+    for (; i < off + species.loopBound(len); i += species.length()) {
+      ByteVector input = ByteVector.fromArray(species, buf, i);
+      if (!input.test(IS_NEGATIVE).anyTrue()) {
+        error = error.or(prevIncomplete);
+      } else {
+        error = error.or(testUtf8(input, prevInputBlock, lut));
+        prevIncomplete = input.and(isIncompleteAnd).eq(isIncompleteEq).toVector();
+        prevInputBlock = input;
+      }
+    }
+
+    if (i < end) {
+      /*
+      The lanes past end are loaded as zero. Zero is ascii, so a char cut
+      off by end is followed by at least one ascii byte, which testUtf8
+      reports as TOO_SHORT. A char cut off by the last full vector is
+      completed or reported the same way.
+       */
+      VectorMask<Byte> inRange = species.indexInRange(i, end);
+      ByteVector input = ByteVector.fromArray(species, buf, i, inRange);
+      error = error.or(testUtf8(input, prevInputBlock, lut));
+    } else {
+      error = error.or(prevIncomplete);
+    }
+    return error.test(IS_DEFAULT).allTrue();
+  }
+
+  /**
+   * Default cap on the number of blocks between checks of the error vector
+   * in {@link #validateEarlyExit(byte[], int, int, LookupTables)}.
+   */
+  public static final int DEFAULT_BLOCKS_PER_CHECK = 256;
+
+  /**
+   * Same as {@link #validateEarlyExit(byte[], int, int, LookupTables, int)},
+   * with at most {@link #DEFAULT_BLOCKS_PER_CHECK} blocks between checks.
+   */
+  public static boolean validateEarlyExit(byte[] buf, int off, int len, LookupTables lut) {
+    return validateEarlyExit(buf, off, len, lut, DEFAULT_BLOCKS_PER_CHECK);
+  }
+
+  /**
+   * Returns true if buf[off, off + len) is valid UTF-8, returning false as
+   * soon as an error is seen instead of after scanning the whole range.
+   * <p>
+   * The error vector is checked after 1 block, then after 2 more, 4 more, and
+   * so on until there are blocksPerCheck blocks between checks. Errors near the
+   * start of the input are found quickly, while long valid inputs pay for one
+   * check every blocksPerCheck vectors.
+   */
+  public static boolean validateEarlyExit(byte[] buf, int off, int len, LookupTables lut, int blocksPerCheck) {
+    Objects.checkFromIndexSize(off, len, buf.length);
+    if (blocksPerCheck < 1) {
+      throw new IllegalArgumentException("blocksPerCheck must be positive: " + blocksPerCheck);
+    }
+    int end = off + len;
+    VectorSpecies<Byte> species = lut.species();
+    ByteVector isIncompleteAnd = lut.isIncompleteAnd();
+    ByteVector isIncompleteEq = lut.isIncompleteEq();
+
+    ByteVector error = ByteVector.zero(species);
+    Vector<Byte> prevIncomplete = ByteVector.zero(species);
+    ByteVector prevInputBlock = ByteVector.zero(species);
+
+    int i = off;
+    int bound = off + species.loopBound(len);
+    int checkInterval = 1;
+    while (i < bound) {
+      int checkpoint = (int) Math.min(bound, i + (long) checkInterval * species.length());
+      for (; i < checkpoint; i += species.length()) {
+        ByteVector input = ByteVector.fromArray(species, buf, i);
+        boolean isAscii = !input.test(IS_NEGATIVE).anyTrue();
+        if (isAscii) {
+          error = error.or(prevIncomplete);
+        } else {
+          error = error.or(testUtf8(input, prevInputBlock, lut));
+          prevIncomplete = input.and(isIncompleteAnd).eq(isIncompleteEq).toVector();
+          prevInputBlock = input;
+        }
+      }
+      if (!error.test(IS_DEFAULT).allTrue()) {
+        return false;
+      }
+      checkInterval = (int) Math.min(2L * checkInterval, blocksPerCheck);
+    }
+    // if we did no SIMD processing, call the scalar routine
+    if (i == off) {
+      return Utf8Swar.validateRange(buf, off, end);
+    }
+    return Utf8Swar.validateRange(buf, backUpToLeadingByte(buf, off, i), end);
+  }
+
+  /*
+  The ascii scans need no lookup tables, so they always use the widest
+  shape, from a static final field so it is constant to the JIT.
+   */
+  private static final VectorSpecies<Byte> ASCII_SPECIES = ByteVector.SPECIES_PREFERRED;
+
+  /**
+   * Returns the index of the first byte in buf[off, off + len) that is not
+   * ascii, or -1 if they all are. The index is into buf.
+   * <p>
+   * Four vectors are or-ed together per iteration, so a negative byte in
+   * any of them shows in one test. Once one does, the vectors are tested
+   * one at a time to find which.
+   */
+  public static int indexOfNonAscii(byte[] buf, int off, int len) {
+    Objects.checkFromIndexSize(off, len, buf.length);
+    int end = off + len;
+    int step = ASCII_SPECIES.length();
+    int i = off;
+    for (; i < off + (len & -(4 * step)); i += 4 * step) {
+      ByteVector v0 = ByteVector.fromArray(ASCII_SPECIES, buf, i);
+      ByteVector v1 = ByteVector.fromArray(ASCII_SPECIES, buf, i + step);
+      ByteVector v2 = ByteVector.fromArray(ASCII_SPECIES, buf, i + 2 * step);
+      ByteVector v3 = ByteVector.fromArray(ASCII_SPECIES, buf, i + 3 * step);
+      // lanewise(OR) rather than or(), which is shared by every shape
+      ByteVector any = v0.lanewise(OR, v1).lanewise(OR, v2.lanewise(OR, v3));
+      if (any.test(IS_NEGATIVE).anyTrue()) {
+        break;
+      }
+    }
+    for (; i < off + ASCII_SPECIES.loopBound(len); i += step) {
+      VectorMask<Byte> negative = ByteVector.fromArray(ASCII_SPECIES, buf, i).test(IS_NEGATIVE);
+      if (negative.anyTrue()) {
+        return i + negative.firstTrue();
+      }
+    }
+    for (; i < end; i++) {
+      if (buf[i] < 0) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns true if every byte of buf[off, off + len) is ascii, so it is
+   * valid UTF-8 and decodes to the same chars as ISO-8859-1.
+   */
+  public static boolean isAscii(byte[] buf, int off, int len) {
+    return indexOfNonAscii(buf, off, len) < 0;
+  }
+
+  /**
+   * Same as {@link #validate(byte[], int, int, LookupTables)}, but skips the
+   * ascii prefix with {@link #indexOfNonAscii} first, and runs the full
+   * check from the first non-ascii byte. This is fastest for input that is
+   * mostly ascii.
+   * <p>
+   * Callers that already have that index, for instance because they build
+   * an ISO-8859-1 String when it is -1, can pass it here instead of having
+   * it found again.
+   */
+  public static boolean validateFromNonAscii(byte[] buf, int off, int len, LookupTables lut) {
+    return validateFromNonAscii(buf, off, len, indexOfNonAscii(buf, off, len), lut);
+  }
+
+  /**
+   * Same as {@link #validateFromNonAscii(byte[], int, int, LookupTables)},
+   * where nonAscii is the result of {@link #indexOfNonAscii} for buf[off, off + len).
+   * Everything before it is ascii, so no char is cut off there.
+   */
+  public static boolean validateFromNonAscii(byte[] buf, int off, int len, int nonAscii, LookupTables lut) {
+    Objects.checkFromIndexSize(off, len, buf.length);
+    if (nonAscii < 0) {
+      return true;
+    }
+    Objects.checkFromToIndex(off, nonAscii, off + len);
+    return validate(buf, nonAscii, off + len - nonAscii, lut);
+  }
+
+  /*
+  The vector before i may end with an incomplete char. If so, returns the
+  index of its leading byte so the scalar routine sees the whole char.
+  Otherwise returns i.
+   */
+  static int backUpToLeadingByte(byte[] buf, int off, int i) {
+    for (int j = 1; j <= 3 && i - j >= off; j++) {
+      if ((buf[i - j] & 0b11000000) != 0b10000000) {
+        return i - j;
+      }
+    }
+    return i;
+  }
+
+  /*
+  For encodings with rules on surrogate pairs, the scalar tail must also
+  see a high surrogate (ED A0..AF __) that ends right before start, since
+  the vector loop never saw what follows it. If there is one, returns its
+  index. Otherwise returns start.
+   */
+  static int backUpToHighSurrogate(byte[] buf, int off, int start) {
+    int high = start - 3;
+    if (high >= off && buf[high] == (byte) 0xed && (buf[high + 1] & 0b11110000) == 0b10100000) {
+      return high;
+    }
+    return start;
+  }
+
+  /**
+   * Returns the first error in buf, or null if buf is valid UTF-8.
+   */
+  public static Utf8Error firstError(byte[] buf, LookupTables lut) {
+    return firstError(buf, 0, buf.length, lut);
+  }
+
+  /**
+   * Returns the first error in buf[off, off + len), or null if it is valid UTF-8.
+   * The offset of the error is an index into buf.
+   * <p>
+   * Unlike {@link #validate(byte[], int, int, LookupTables)}, the error vector
+   * is tested after every block. Once a block has an error, only that block
+   * (and the char leading into it) is rescanned by the scalar routine to find
+   * the exact offset and kind.
+   */
+  public static Utf8Error firstError(byte[] buf, int off, int len, LookupTables lut) {
+    Objects.checkFromIndexSize(off, len, buf.length);
+    int end = off + len;
+    VectorSpecies<Byte> species = lut.species();
+    ByteVector isIncompleteAnd = lut.isIncompleteAnd();
+    ByteVector isIncompleteEq = lut.isIncompleteEq();
+
+    Vector<Byte> prevIncomplete = ByteVector.zero(species);
+    ByteVector prevInputBlock = ByteVector.zero(species);
+
+    int i = off;
+    for (; i < off + species.loopBound(len); i += species.length()) {
+      ByteVector input = ByteVector.fromArray(species, buf, i);
+      Vector<Byte> error;
+      if (!input.test(IS_NEGATIVE).anyTrue()) {
+        error = prevIncomplete;
+      } else {
+        error = testUtf8(input, prevInputBlock, lut);
+        prevIncomplete = input.and(isIncompleteAnd).eq(isIncompleteEq).toVector();
+        prevInputBlock = input;
+      }
+      if (!error.test(IS_DEFAULT).allTrue()) {
+        // everything before this block is valid, except maybe a char leading into it
+        break;
+      }
+    }
+    Utf8Error error = scalarFirstError(backUpToLeadingByte(buf, off, i), end, buf);
+    if (Utf8Metrics.ENABLED) {
+      Utf8Metrics.error(error);
+    }
+    return error;
+  }
+
+  /**
+   * Copies src[off, off + len) to dst from dstOff, replacing each invalid
+   * sequence with U+FFFD, and returns the number of bytes written.
+   * <p>
+   * Like the WHATWG encoding standard, one U+FFFD replaces each maximal
+   * subpart: the longest prefix of a valid char, or else a single byte.
+   * Valid input is copied in bulk after one pass of
+   * {@link #firstError(byte[], int, int, LookupTables)}. Every replaced byte
+   * becomes 3, so dst needs room for up to 3 * len bytes; an
+   * IndexOutOfBoundsException is thrown if it runs out.
+   */
+  public static int sanitize(byte[] src, int off, int len, byte[] dst, int dstOff, LookupTables lut) {
+    Objects.checkFromIndexSize(off, len, src.length);
+    Objects.checkIndex(dstOff, dst.length + 1);
+    int end = off + len;
+    int pos = off;
+    int dp = dstOff;
+    while (true) {
+      /*
+      pos is never a continuation of an earlier valid char, so validation
+      can start over from there.
+       */
+      Utf8Error error = firstError(src, pos, end - pos, lut);
+      int validEnd = error == null ? end : (int) error.offset();
+      System.arraycopy(src, pos, dst, dp, validEnd - pos);
+      dp += validEnd - pos;
+      if (error == null) {
+        return dp - dstOff;
+      }
+      Objects.checkFromIndexSize(dp, 3, dst.length);
+      dst[dp++] = (byte) 0xef;
+      dst[dp++] = (byte) 0xbf;
+      dst[dp++] = (byte) 0xbd;
+      pos = validEnd + maximalSubpartLength(src, validEnd, end);
+    }
+  }
+
+  /*
+  Returns the length of the maximal subpart of the invalid sequence at pos:
+  its leading byte, plus the continuation bytes that could still have made
+  a valid char. The second byte's range depends on the leading byte,
+  like in Table 3-7 of the Unicode standard.
+   */
+  static int maximalSubpartLength(byte[] buf, int pos, int end) {
+    int byte0 = buf[pos] & 0xff;
+    int charLength;
+    int byte1Min = 0x80;
+    int byte1Max = 0xbf;
+    if (byte0 < 0xc2 || byte0 > 0xf4) {
+      return 1;
+    } else if (byte0 < 0xe0) {
+      charLength = 2;
+    } else if (byte0 < 0xf0) {
+      charLength = 3;
+      if (byte0 == 0xe0) {
+        byte1Min = 0xa0;
+      } else if (byte0 == 0xed) {
+        byte1Max = 0x9f;
+      }
+    } else {
+      charLength = 4;
+      if (byte0 == 0xf0) {
+        byte1Min = 0x90;
+      } else if (byte0 == 0xf4) {
+        byte1Max = 0x8f;
+      }
+    }
+
+    if (pos + 1 == end) {
+      return 1;
+    }
+    int byte1 = buf[pos + 1] & 0xff;
+    if (byte1 < byte1Min || byte1 > byte1Max) {
+      return 1;
+    }
+    int k = 2;
+    while (k < charLength && pos + k < end && (buf[pos + k] & 0b11000000) == 0b10000000) {
+      k++;
+    }
+    return k;
+  }
+
+  /**
+   * Scalar version of {@link #firstError(byte[], int, int, LookupTables)},
+   * starting at pos, which must not be a continuation of an earlier char.
+   */
+  static Utf8Error scalarFirstError(int pos, int end, byte[] buf) {
+    while (pos < end) {
+      int byte0 = buf[pos] & 0xff;
+      if (byte0 < 0b10000000) {
+        pos++;
+        continue;
+      }
+
+      int charLength;
+      if (byte0 < 0xc0) {
+        return new Utf8Error(pos, Utf8Error.Kind.TOO_LONG);
+      } else if (byte0 < 0xc2) {
+        return new Utf8Error(pos, Utf8Error.Kind.OVERLONG_2);
+      } else if (byte0 < 0xe0) {
+        charLength = 2;
+      } else if (byte0 < 0xf0) {
+        charLength = 3;
+      } else if (byte0 < 0xf5) {
+        charLength = 4;
+      } else {
+        return new Utf8Error(pos, Utf8Error.Kind.TOO_LARGE);
+      }
+
+      if (pos + 1 == end || (buf[pos + 1] & 0b11000000) != 0b10000000) {
+        return new Utf8Error(pos, Utf8Error.Kind.TOO_SHORT);
+      }
+      // the second byte decides the special cases
+      int byte1 = buf[pos + 1] & 0xff;
+      if (byte0 == 0xe0 && byte1 < 0xa0) {
+        return new Utf8Error(pos, Utf8Error.Kind.OVERLONG_3);
+      } else if (byte0 == 0xed && byte1 > 0x9f) {
+        return new Utf8Error(pos, Utf8Error.Kind.SURROGATE);
+      } else if (byte0 == 0xf0 && byte1 < 0x90) {
+        return new Utf8Error(pos, Utf8Error.Kind.OVERLONG_4);
+      } else if (byte0 == 0xf4 && byte1 > 0x8f) {
+        return new Utf8Error(pos, Utf8Error.Kind.TOO_LARGE);
+      }
+
+      for (int k = 2; k < charLength; k++) {
+        if (pos + k == end || (buf[pos + k] & 0b11000000) != 0b10000000) {
+          return new Utf8Error(pos, Utf8Error.Kind.TOO_SHORT);
+        }
+      }
+      pos += charLength;
+    }
+    return null;
+  }
+
+  /**
+   * Returns true if the bytes between the position and limit of bb are
+   * valid UTF-8. Heap and direct buffers are both read in place; the
+   * position of bb is not changed.
+   */
+  public static boolean validate(ByteBuffer bb, LookupTables lut) {
+    if (bb.hasArray()) {
+      return validate(bb.array(), bb.arrayOffset() + bb.position(), bb.remaining(), lut);
+    }
+    return validate(MemorySegment.ofBuffer(bb), lut);
+  }
+
+  /**
+   * Returns true if the bytes of seg are valid UTF-8.
+   * <p>
+   * Works on heap and native segments alike, including segments
+   * larger than 2 GB.
+   */
+  public static boolean validate(MemorySegment seg, LookupTables lut) {
+    if (Utf8Metrics.ENABLED) {
+      return validateMetered(seg, lut);
+    }
+    VectorSpecies<Byte> species = lut.species();
+    ByteVector isIncompleteAnd = lut.isIncompleteAnd();
+    ByteVector isIncompleteEq = lut.isIncompleteEq();
+    long length = seg.byteSize();
+
+    ByteVector error = ByteVector.zero(species);
+    Vector<Byte> prevIncomplete = ByteVector.zero(species);
+    ByteVector prevInputBlock = ByteVector.zero(species);
+
+    long i = 0;
+    for (; i < species.loopBound(length); i += species.length()) {
+      ByteVector input = ByteVector.fromMemorySegment(species, seg, i, ByteOrder.nativeOrder());
+      boolean isAscii = !input.test(IS_NEGATIVE).anyTrue();
+      if (isAscii) {
+        error = error.or(prevIncomplete);
+      } else {
+        error = error.or(testUtf8(input, prevInputBlock, lut));
+        prevIncomplete = input.and(isIncompleteAnd).eq(isIncompleteEq).toVector();
+        prevInputBlock = input;
+      }
+    }
+    if (i == 0) {
+      return scalarValidUtf8(0, seg);
+    }
+    if (!error.test(IS_DEFAULT).allTrue()) {
+      return false;
+    }
+    /*
+    The last vector may end with an incomplete char. If so, go back to
+    its leading byte so the scalar routine sees the whole char.
+     */
+    for (int j = 1; j <= 3; j++) {
+      if ((seg.get(JAVA_BYTE, i - j) & 0b11000000) != 0b10000000) {
         i -= j;
         break;
       }
     }
-    if (!foundLeadingBytes) {
+    return scalarValidUtf8(i, seg);
+  }
+
+  /*
+  A copy of validate(MemorySegment, LookupTables) that updates Utf8Metrics.
+   */
+  private static boolean validateMetered(MemorySegment seg, LookupTables lut) {
+    VectorSpecies<Byte> species = lut.species();
+    ByteVector isIncompleteAnd = lut.isIncompleteAnd();
+    ByteVector isIncompleteEq = lut.isIncompleteEq();
+    long length = seg.byteSize();
+
+    ByteVector error = ByteVector.zero(species);
+    Vector<Byte> prevIncomplete = ByteVector.zero(species);
+    ByteVector prevInputBlock = ByteVector.zero(species);
+
+    Utf8ValidationEvent event = Utf8Metrics.beginEvent(length);
+    long asciiBlocks = 0;
+
+    long i = 0;
+    for (; i < species.loopBound(length); i += species.length()) {
+      ByteVector input = ByteVector.fromMemorySegment(species, seg, i, ByteOrder.nativeOrder());
+      boolean isAscii = !input.test(IS_NEGATIVE).anyTrue();
+      if (isAscii) {
+        error = error.or(prevIncomplete);
+        asciiBlocks++;
+      } else {
+        error = error.or(testUtf8(input, prevInputBlock, lut));
+        prevIncomplete = input.and(isIncompleteAnd).eq(isIncompleteEq).toVector();
+        prevInputBlock = input;
+      }
+    }
+    long vectorBytes = i;
+    boolean valid;
+    if (i == 0) {
+      valid = scalarValidSegment(0, seg);
+    } else if (!error.test(IS_DEFAULT).allTrue()) {
+      valid = false;
+    } else {
+      /*
+      The last vector may end with an incomplete char. If so, go back to
+      its leading byte so the scalar routine sees the whole char.
+       */
+      for (int j = 1; j <= 3; j++) {
+        if ((seg.get(JAVA_BYTE, i - j) & 0b11000000) != 0b10000000) {
+          i -= j;
+          break;
+        }
+      }
+      valid = scalarValidSegment(i, seg);
+    }
+    Utf8Metrics.validated(event, species.length(), length, vectorBytes, asciiBlocks, valid);
+    return valid;
+  }
+
+  /**
+   * Returns true if the file at path is valid UTF-8.
+   * <p>
+   * The file is memory-mapped instead of being read onto the heap,
+   * so it is not copied and may be larger than 2 GB.
+   */
+  public static boolean validate(Path path, LookupTables lut) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+         Arena arena = Arena.ofConfined()) {
+      MemorySegment seg = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+      return validate(seg, lut);
+    }
+  }
+
+  /**
+   * Returns the number of code points in buf[off, off + len), which must be
+   * valid UTF-8. This is the number of bytes that are not continuation bytes.
+   */
+  public static int countCodePoints(byte[] buf, int off, int len, LookupTables lut) {
+    Objects.checkFromIndexSize(off, len, buf.length);
+    VectorSpecies<Byte> species = lut.species();
+    int count = 0;
+    int i = off;
+    for (; i < off + species.loopBound(len); i += species.length()) {
+      ByteVector input = ByteVector.fromArray(species, buf, i);
+      // continuation bytes are 10______, which are -128 to -65 as signed bytes
+      count += input.compare(GE, (byte) 0b11000000).trueCount();
+    }
+    return count + scalarCount(buf, i, off + len, false);
+  }
+
+  /**
+   * Returns the number of chars needed to decode buf[off, off + len), which
+   * must be valid UTF-8, to UTF-16. This is the number of code points, plus
+   * one for each 4-byte char since those become surrogate pairs.
+   */
+  public static int utf16Length(byte[] buf, int off, int len, LookupTables lut) {
+    Objects.checkFromIndexSize(off, len, buf.length);
+    VectorSpecies<Byte> species = lut.species();
+    int count = 0;
+    int i = off;
+    for (; i < off + species.loopBound(len); i += species.length()) {
+      ByteVector input = ByteVector.fromArray(species, buf, i);
+      count += input.compare(GE, (byte) 0b11000000).trueCount()
+          + input.compare(UNSIGNED_GE, (byte) 0b11110000).trueCount();
+    }
+    return count + scalarCount(buf, i, off + len, true);
+  }
+
+  /**
+   * Validates buf[off, off + len) and counts its code points and UTF-16
+   * length in the same pass. Returns null if it is not valid UTF-8.
+   */
+  public static Utf8Counts validateAndCount(byte[] buf, int off, int len, LookupTables lut) {
+    Objects.checkFromIndexSize(off, len, buf.length);
+    int end = off + len;
+    VectorSpecies<Byte> species = lut.species();
+    ByteVector isIncompleteAnd = lut.isIncompleteAnd();
+    ByteVector isIncompleteEq = lut.isIncompleteEq();
+
+    ByteVector error = ByteVector.zero(species);
+    Vector<Byte> prevIncomplete = ByteVector.zero(species);
+    ByteVector prevInputBlock = ByteVector.zero(species);
+    int codePoints = 0;
+    int fourByteChars = 0;
+
+    int i = off;
+    for (; i < off + species.loopBound(len); i += species.length()) {
+      ByteVector input = ByteVector.fromArray(species, buf, i);
+      boolean isAscii = !input.test(IS_NEGATIVE).anyTrue();
+      if (isAscii) {
+        error = error.or(prevIncomplete);
+        codePoints += species.length();
+      } else {
+        error = error.or(testUtf8(input, prevInputBlock, lut));
+        prevIncomplete = input.and(isIncompleteAnd).eq(isIncompleteEq).toVector();
+        prevInputBlock = input;
+        codePoints += input.compare(GE, (byte) 0b11000000).trueCount();
+        fourByteChars += input.compare(UNSIGNED_GE, (byte) 0b11110000).trueCount();
+      }
+    }
+
+    boolean valid;
+    if (i == off) {
+      valid = Utf8Swar.validateRange(buf, off, end);
+    } else {
+      valid = error.test(IS_DEFAULT).allTrue()
+          && Utf8Swar.validateRange(buf, backUpToLeadingByte(buf, off, i), end);
+    }
+    if (!valid) {
+      return null;
+    }
+    int tailCodePoints = scalarCount(buf, i, end, false);
+    int tailUtf16Length = scalarCount(buf, i, end, true);
+    return new Utf8Counts(
+        codePoints + tailCodePoints,
+        codePoints + fourByteChars + tailUtf16Length);
+  }
+
+  /*
+  Counts the bytes in buf[from, to) that are not continuation bytes,
+  and if utf16 is true, the leading bytes of 4-byte chars a second time.
+   */
+  private static int scalarCount(byte[] buf, int from, int to, boolean utf16) {
+    int count = 0;
+    for (int i = from; i < to; i++) {
+      int b = buf[i] & 0xff;
+      if ((b & 0b11000000) != 0b10000000) {
+        count++;
+      }
+      if (utf16 && b >= 0b11110000) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Returns the largest n &lt;= min(len, maxBytes) such that buf[off, off + n)
+   * is valid UTF-8 and does not end in the middle of a char, or -1 if the
+   * bytes before that cut are not valid UTF-8. Only buf[off, off + n) is
+   * validated, so errors after the cut are ignored.
+   * <p>
+   * Use this to fit text in a column or key with a byte limit.
+   */
+  public static int truncateToBoundary(byte[] buf, int off, int len, int maxBytes, LookupTables lut) {
+    Objects.checkFromIndexSize(off, len, buf.length);
+    if (maxBytes < 0) {
+      throw new IllegalArgumentException("maxBytes must not be negative: " + maxBytes);
+    }
+    int cut = off + Math.min(len, maxBytes);
+    if (cut < off + len) {
+      /*
+      Like the scalar tail of validate, find the leading byte of the last char
+      that starts before the cut, and drop that char if it does not fit.
+       */
+      int lead = backUpToLeadingByte(buf, off, cut);
+      if (lead < cut && lead + charLength(buf[lead]) > cut) {
+        cut = lead;
+      }
+    }
+    return validate(buf, off, cut - off, lut) ? cut - off : -1;
+  }
+
+  /**
+   * Returns the length in bytes of the first maxCodePoints code points of
+   * buf[off, off + len), or len if it has fewer, or -1 if those bytes are not
+   * valid UTF-8. Only the bytes kept are validated.
+   */
+  public static int truncateToCodePoints(byte[] buf, int off, int len, int maxCodePoints, LookupTables lut) {
+    Objects.checkFromIndexSize(off, len, buf.length);
+    if (maxCodePoints < 0) {
+      throw new IllegalArgumentException("maxCodePoints must not be negative: " + maxCodePoints);
+    }
+    int end = off + len;
+    VectorSpecies<Byte> species = lut.species();
+    ByteVector isIncompleteAnd = lut.isIncompleteAnd();
+    ByteVector isIncompleteEq = lut.isIncompleteEq();
+
+    ByteVector error = ByteVector.zero(species);
+    Vector<Byte> prevIncomplete = ByteVector.zero(species);
+    ByteVector prevInputBlock = ByteVector.zero(species);
+    int codePoints = 0;
+
+    /*
+    Validate whole blocks while the limit is not reached. The block that
+    reaches it is left to the scalar routine, since the kernel would also
+    check the bytes after the cut, even if it ends right after the last
+    code point kept, where stray continuation bytes may follow.
+     */
+    int i = off;
+    for (; i < off + species.loopBound(len); i += species.length()) {
+      ByteVector input = ByteVector.fromArray(species, buf, i);
+      boolean isAscii = !input.test(IS_NEGATIVE).anyTrue();
+      int blockCodePoints = isAscii
+          ? species.length()
+          : input.compare(GE, (byte) 0b11000000).trueCount();
+      if (codePoints + blockCodePoints >= maxCodePoints) {
+        break;
+      }
+      codePoints += blockCodePoints;
+      if (isAscii) {
+        error = error.or(prevIncomplete);
+      } else {
+        error = error.or(testUtf8(input, prevInputBlock, lut));
+        prevIncomplete = input.and(isIncompleteAnd).eq(isIncompleteEq).toVector();
+        prevInputBlock = input;
+      }
+    }
+    if (!error.test(IS_DEFAULT).allTrue()) {
+      return -1;
+    }
+
+    /*
+    The cut is after the last char kept. Like truncateToBoundary, only the
+    continuation bytes that char needs are taken, so a stray one after it
+    is cut off rather than rejected.
+     */
+    int cut = i;
+    int last = backUpToLeadingByte(buf, off, i);
+    while (cut < end && codePoints < maxCodePoints) {
+      if ((buf[cut] & 0b11000000) != 0b10000000) {
+        codePoints++;
+        last = cut;
+      }
+      cut++;
+    }
+    if (last < cut) {
+      int charEnd = Math.min(last + charLength(buf[last]), end);
+      while (cut < charEnd && (buf[cut] & 0b11000000) == 0b10000000) {
+        cut++;
+      }
+    }
+    return Utf8Swar.validateRange(buf, backUpToLeadingByte(buf, off, i), cut) ? cut - off : -1;
+  }
+
+  /*
+  The length of the char that starts with leading byte b, or 1 if b is not
+  a leading byte, in which case the char is invalid anyway.
+   */
+  private static int charLength(byte b) {
+    if ((b & 0b11100000) == 0b11000000) {
+      return 2;
+    } else if ((b & 0b11110000) == 0b11100000) {
+      return 3;
+    } else if ((b & 0b11111000) == 0b11110000) {
+      return 4;
+    }
+    return 1;
+  }
+
+  /**
+   * Validates buf[off, off + len) and finds every delimiter byte in it, like
+   * '\n', in the same pass. Returns the indexes of the delimiters in buf, in
+   * order, or null if it is not valid UTF-8.
+   */
+  public static int[] validateAndIndex(byte[] buf, int off, int len, byte delimiter, LookupTables lut) {
+    IntIndex index = new IntIndex();
+    return validateAndIndex(buf, off, len, delimiter, index, lut) ? index.toArray() : null;
+  }
+
+  /**
+   * Returns true if buf[off, off + len) is valid UTF-8, and passes the index
+   * in buf of every delimiter byte to onDelimiter, in order. Delimiters are
+   * found in the same pass as validation, so if buf is not valid, some may
+   * be passed before that is known.
+   */
+  public static boolean validateAndIndex(
+      byte[] buf, int off, int len, byte delimiter, IntConsumer onDelimiter, LookupTables lut) {
+    Objects.checkFromIndexSize(off, len, buf.length);
+    int end = off + len;
+    VectorSpecies<Byte> species = lut.species();
+    ByteVector isIncompleteAnd = lut.isIncompleteAnd();
+    ByteVector isIncompleteEq = lut.isIncompleteEq();
+
+    /*
+    The delimiter lanes of a vector are collected with VectorMask.toLong,
+    which throws for more than 64 lanes, like LookupTablesMax on wide SVE.
+    Those shapes validate first and then scan one byte at a time.
+     */
+    if (species.length() > Long.SIZE) {
+      for (int j = off; j < end; j++) {
+        if (buf[j] == delimiter) {
+          onDelimiter.accept(j);
+        }
+      }
+      return validate(buf, off, len, lut);
+    }
+
+    ByteVector error = ByteVector.zero(species);
+    Vector<Byte> prevIncomplete = ByteVector.zero(species);
+    ByteVector prevInputBlock = ByteVector.zero(species);
+
+    int i = off;
+    for (; i < off + species.loopBound(len); i += species.length()) {
+      ByteVector input = ByteVector.fromArray(species, buf, i);
+      long delimiters = input.compare(EQ, delimiter).toLong();
+      while (delimiters != 0) {
+        onDelimiter.accept(i + Long.numberOfTrailingZeros(delimiters));
+        delimiters &= delimiters - 1;
+      }
+      boolean isAscii = !input.test(IS_NEGATIVE).anyTrue();
+      if (isAscii) {
+        error = error.or(prevIncomplete);
+      } else {
+        error = error.or(testUtf8(input, prevInputBlock, lut));
+        prevIncomplete = input.and(isIncompleteAnd).eq(isIncompleteEq).toVector();
+        prevInputBlock = input;
+      }
+    }
+    for (int j = i; j < end; j++) {
+      if (buf[j] == delimiter) {
+        onDelimiter.accept(j);
+      }
+    }
+
+    if (i == off) {
+      return Utf8Swar.validateRange(buf, off, end);
+    }
+    return error.test(IS_DEFAULT).allTrue()
+        && Utf8Swar.validateRange(buf, backUpToLeadingByte(buf, off, i), end);
+  }
+
+  /**
+   * Same as {@link #validateAndIndex(byte[], int, int, byte, LookupTables)}
+   * for the bytes of seg, which may be larger than 2 GB.
+   */
+  public static long[] validateAndIndex(MemorySegment seg, byte delimiter, LookupTables lut) {
+    LongIndex index = new LongIndex();
+    return validateAndIndex(seg, delimiter, index, lut) ? index.toArray() : null;
+  }
+
+  /**
+   * Same as {@link #validateAndIndex(byte[], int, int, byte, IntConsumer, LookupTables)}
+   * for the bytes of seg, which may be larger than 2 GB.
+   */
+  public static boolean validateAndIndex(
+      MemorySegment seg, byte delimiter, LongConsumer onDelimiter, LookupTables lut) {
+    VectorSpecies<Byte> species = lut.species();
+    ByteVector isIncompleteAnd = lut.isIncompleteAnd();
+    ByteVector isIncompleteEq = lut.isIncompleteEq();
+    long length = seg.byteSize();
+
+    // as in the byte[] overload, VectorMask.toLong holds at most 64 lanes
+    if (species.length() > Long.SIZE) {
+      for (long j = 0; j < length; j++) {
+        if (seg.get(JAVA_BYTE, j) == delimiter) {
+          onDelimiter.accept(j);
+        }
+      }
+      return validate(seg, lut);
+    }
+
+    ByteVector error = ByteVector.zero(species);
+    Vector<Byte> prevIncomplete = ByteVector.zero(species);
+    ByteVector prevInputBlock = ByteVector.zero(species);
+
+    long i = 0;
+    for (; i < species.loopBound(length); i += species.length()) {
+      ByteVector input = ByteVector.fromMemorySegment(species, seg, i, ByteOrder.nativeOrder());
+      long delimiters = input.compare(EQ, delimiter).toLong();
+      while (delimiters != 0) {
+        onDelimiter.accept(i + Long.numberOfTrailingZeros(delimiters));
+        delimiters &= delimiters - 1;
+      }
+      boolean isAscii = !input.test(IS_NEGATIVE).anyTrue();
+      if (isAscii) {
+        error = error.or(prevIncomplete);
+      } else {
+        error = error.or(testUtf8(input, prevInputBlock, lut));
+        prevIncomplete = input.and(isIncompleteAnd).eq(isIncompleteEq).toVector();
+        prevInputBlock = input;
+      }
+    }
+    for (long j = i; j < length; j++) {
+      if (seg.get(JAVA_BYTE, j) == delimiter) {
+        onDelimiter.accept(j);
+      }
+    }
+
+    if (i == 0) {
+      return scalarValidUtf8(0, seg);
+    }
+    if (!error.test(IS_DEFAULT).allTrue()) {
       return false;
     }
-    return scalarValidUtf8(i, buf);
+    for (int j = 1; j <= 3; j++) {
+      if ((seg.get(JAVA_BYTE, i - j) & 0b11000000) != 0b10000000) {
+        i -= j;
+        break;
+      }
+    }
+    return scalarValidUtf8(i, seg);
+  }
+
+  /*
+  Growable arrays for the delimiter indexes, doubling when full.
+   */
+  private static final class IntIndex implements IntConsumer {
+    private int[] indexes = new int[16];
+    private int size;
+
+    @Override
+    public void accept(int index) {
+      if (size == indexes.length) {
+        indexes = Arrays.copyOf(indexes, Math.addExact(size, size));
+      }
+      indexes[size++] = index;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(indexes, size);
+    }
+  }
+
+  private static final class LongIndex implements LongConsumer {
+    private long[] indexes = new long[16];
+    private int size;
+
+    @Override
+    public void accept(long index) {
+      if (size == indexes.length) {
+        indexes = Arrays.copyOf(indexes, Math.addExact(size, size));
+      }
+      indexes[size++] = index;
+    }
+
+    long[] toArray() {
+      return Arrays.copyOf(indexes, size);
+    }
+  }
+
+  /**
+   * Inputs smaller than this are validated on the calling thread by
+   * {@link #validateParallel(MemorySegment, LookupTables, ForkJoinPool)}.
+   * It is also the smallest piece of work handed to the pool.
+   */
+  public static final long PARALLEL_THRESHOLD = 1 << 20;
+
+  /**
+   * Same as {@link #validateParallel(MemorySegment, LookupTables, ForkJoinPool)}
+   * using the common pool.
+   */
+  public static boolean validateParallel(byte[] buf, LookupTables lut) {
+    return validateParallel(MemorySegment.ofArray(buf), lut, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Same as {@link #validateParallel(MemorySegment, LookupTables, ForkJoinPool)}
+   * using the common pool.
+   */
+  public static boolean validateParallel(MemorySegment seg, LookupTables lut) {
+    return validateParallel(seg, lut, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Returns true if the bytes of seg are valid UTF-8, validating pieces of
+   * seg in parallel on pool. seg must be accessible from the pool's threads,
+   * so segments of a confined Arena are not allowed.
+   * <p>
+   * Inputs smaller than {@link #PARALLEL_THRESHOLD} are validated on the
+   * calling thread.
+   */
+  public static boolean validateParallel(MemorySegment seg, LookupTables lut, ForkJoinPool pool) {
+    long length = seg.byteSize();
+    if (length < PARALLEL_THRESHOLD) {
+      return validate(seg, lut);
+    }
+    // a few pieces per thread, so a slow thread does not hold up the rest
+    long leafSize = Math.max(PARALLEL_THRESHOLD, length / (4L * pool.getParallelism()));
+    return pool.invoke(new ValidateTask(seg, 0, length, leafSize, lut));
+  }
+
+  /**
+   * Same as {@link #validate(Path, LookupTables)}, but the mapped file
+   * is validated in parallel on the common pool.
+   */
+  public static boolean validateParallel(Path path, LookupTables lut) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+         Arena arena = Arena.ofShared()) {
+      MemorySegment seg = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+      return validateParallel(seg, lut);
+    }
   }
 
   /**
    * Returns the error vector
    */
-  private static Vector<Byte> testUtf8(ByteVector input, ByteVector prevInputBlock, LookupTables lut) {
+  static Vector<Byte> testUtf8(ByteVector input, ByteVector prevInputBlock, LookupTables lut) {
     VectorSpecies<Byte> species = lut.species();
 
     /*
@@ -216,8 +1346,7 @@ public class Utf8 {
 
     } else {
       for (String path : args) {
-        buf = Files.readAllBytes(Path.of(path));
-        System.out.println(path + ": " + validate(buf, luts));
+        System.out.println(path + ": " + validate(Path.of(path), luts));
       }
     }
   }
@@ -0,0 +1,390 @@
+package com.augustnagro.utf8;
+
+import com.augustnagro.utf8.Utf8Profile.Engine;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Validates UTF-8 with the engine that is fastest on this machine for the
+ * length of the input, as chosen by a {@link Utf8Profile}.
+ * <p>
+ * The profile is taken from the first of:
+ * <ol>
+ *   <li>the system property {@value #PROFILE_PROPERTY}, in the form of
+ *   {@link Utf8Profile#toString()};</li>
+ *   <li>the file named by the system property {@value #PROFILE_FILE_PROPERTY},
+ *   if it exists;</li>
+ *   <li>if the system property {@value #CALIBRATE_PROPERTY} is true, a
+ *   calibration run in a background thread, started when this class is
+ *   initialized. If {@value #PROFILE_FILE_PROPERTY} is set, the result is
+ *   saved there for the next start.</li>
+ *   <li>otherwise, or until calibration finishes, {@link #defaultProfile()}.</li>
+ * </ol>
+ * Background calibration warms the engines up for at most 300 milliseconds in
+ * all, then times each for a few milliseconds in each bucket. That is often too
+ * short for the JIT to compile the vector engines, in which case the default
+ * profile is kept. Run {@link #main(String[])} to calibrate for longer and
+ * print a profile to save.
+ * <p>
+ * The vector engines are {@link Utf8Vector128} and its siblings. Unlike
+ * {@link Utf8}, this class can be loaded without
+ * {@code --add-modules=jdk.incubator.vector}, in which case it always uses
+ * {@link Utf8Swar}.
+ */
+public final class Utf8Auto {
+
+  /**
+   * System property holding a profile to use instead of calibrating. If it
+   * cannot be parsed, {@link #defaultProfile()} is used.
+   */
+  public static final String PROFILE_PROPERTY = "com.augustnagro.utf8.profile";
+
+  /**
+   * System property naming a file that caches the calibrated profile.
+   */
+  public static final String PROFILE_FILE_PROPERTY = "com.augustnagro.utf8.profileFile";
+
+  /**
+   * System property that, when true, starts background calibration.
+   */
+  public static final String CALIBRATE_PROPERTY = "com.augustnagro.utf8.calibrate";
+
+  private static final boolean VECTOR_AVAILABLE =
+      ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+  // time each engine is measured for in each bucket by background calibration
+  private static final Duration MEASURE = Duration.ofMillis(4);
+
+  /*
+  An engine is warm once it has been called this many times, more than
+  the JIT's threshold for its optimizing compiler, and the last round of
+  calls was no faster than the one before. Background warmup of all the
+  engines together gives up after MAX_WARMUP.
+   */
+  private static final int WARMUP_CALLS = 20_000;
+  private static final int WARMUP_ROUND_CALLS = 1_000;
+  private static final Duration MAX_WARMUP = Duration.ofMillis(300);
+
+  // calibration results are stored here, so the JIT cannot drop the calls
+  private static volatile boolean calibrationSink;
+
+  private static volatile Utf8Profile profile = loadProfile();
+
+  private Utf8Auto() {}
+
+  /**
+   * Returns true if the vector engines may be used.
+   */
+  public static boolean isVectorAvailable() {
+    return VECTOR_AVAILABLE;
+  }
+
+  /**
+   * Returns the profile in use, for logging. Its toString can be passed back
+   * in {@value #PROFILE_PROPERTY}. If background calibration is on, this
+   * changes once when it finishes.
+   */
+  public static Utf8Profile profile() {
+    return profile;
+  }
+
+  /**
+   * Returns the profile used before calibration, or when it is not turned on:
+   * SWAR below 64 bytes, and above that the widest vector shape up to 256
+   * bits that the hardware supports, or SWAR without vectors.
+   */
+  public static Utf8Profile defaultProfile() {
+    Engine engine = Engine.SWAR;
+    if (VECTOR_AVAILABLE) {
+      engine = VectorEngine.preferredBitSize() >= 256 ? Engine.VECTOR_256 : Engine.VECTOR_128;
+    }
+    Engine[] engines = new Engine[Utf8Profile.bucketCount()];
+    Arrays.fill(engines, engine);
+    engines[0] = Engine.SWAR;
+    return new Utf8Profile(engines);
+  }
+
+  /**
+   * Returns true if buf is valid UTF-8.
+   */
+  public static boolean validate(byte[] buf) {
+    return validate(buf, 0, buf.length);
+  }
+
+  /**
+   * Returns true if buf[off, off + len) is valid UTF-8.
+   */
+  public static boolean validate(byte[] buf, int off, int len) {
+    Objects.checkFromIndexSize(off, len, buf.length);
+    // the profile only has engines this JVM can run
+    return dispatch(profile.engineFor(len), buf, off, len);
+  }
+
+  /**
+   * Returns true if buf[off, off + len) is valid UTF-8, using the given engine.
+   *
+   * @throws UnsupportedOperationException if engine is not SWAR and
+   *                                       {@link #isVectorAvailable()} is false.
+   */
+  public static boolean validate(Engine engine, byte[] buf, int off, int len) {
+    Objects.checkFromIndexSize(off, len, buf.length);
+    if (engine.needsVectorModule() && !VECTOR_AVAILABLE) {
+      throw new UnsupportedOperationException(engine + " needs the jdk.incubator.vector module");
+    }
+    return dispatch(engine, buf, off, len);
+  }
+
+  private static boolean dispatch(Engine engine, byte[] buf, int off, int len) {
+    return switch (engine) {
+      case SCALAR -> Utf8.scalarValidUtf8(off, off + len, buf);
+      case SWAR -> Utf8Swar.validate(buf, off, len);
+      case VECTOR_128 -> VectorEngine.validate128(buf, off, len);
+      case VECTOR_256 -> VectorEngine.validate256(buf, off, len);
+      case VECTOR_512 -> VectorEngine.validate512(buf, off, len);
+    };
+  }
+
+  /**
+   * Same as {@link #calibrate(Duration, Duration)}, with at most 300
+   * milliseconds of warmup.
+   */
+  public static Utf8Profile calibrate(Duration measure) {
+    return calibrate(MAX_WARMUP, measure);
+  }
+
+  /**
+   * Warms up every available engine, times it on text of each bucket's
+   * length, and returns a profile with the fastest of each. Vector shapes
+   * wider than the hardware's preferred shape are not tried. This does not
+   * change the profile in use.
+   * <p>
+   * Engines that are not compiled by the end of the warmup are not timed.
+   * If the engines of {@link #defaultProfile()} are among them, the timings
+   * would not be a fair comparison, so the default profile is returned.
+   *
+   * @param warmup  how long all the engines are warmed up for, at most.
+   * @param measure how long each engine is timed in each bucket.
+   */
+  public static Utf8Profile calibrate(Duration warmup, Duration measure) {
+    List<Engine> candidates = candidates();
+    int buckets = Utf8Profile.bucketCount();
+    byte[][] samples = new byte[buckets][];
+    for (int b = 0; b < buckets; b++) {
+      samples[b] = sample(b);
+    }
+
+    long warmupNanos = warmup.toNanos() / candidates.size();
+    List<Engine> warm = new ArrayList<>();
+    for (Engine engine : candidates) {
+      if (warmUp(engine, samples[1], warmupNanos)) {
+        warm.add(engine);
+      }
+    }
+    Utf8Profile defaults = defaultProfile();
+    for (int b = 0; b < buckets; b++) {
+      if (!warm.contains(defaults.engine(b))) {
+        return defaults;
+      }
+    }
+
+    Engine[] fastest = new Engine[buckets];
+    for (int b = 0; b < buckets; b++) {
+      double bestNanosPerCall = Double.MAX_VALUE;
+      for (Engine engine : warm) {
+        double nanosPerCall = time(engine, samples[b], measure.toNanos());
+        if (nanosPerCall < bestNanosPerCall) {
+          bestNanosPerCall = nanosPerCall;
+          fastest[b] = engine;
+        }
+      }
+    }
+    return new Utf8Profile(fastest);
+  }
+
+  /**
+   * Calibrates, with up to a minute of warmup and timing each engine for 200
+   * milliseconds per bucket, and prints the profile, to be passed in
+   * {@value #PROFILE_PROPERTY} or saved to the file named by
+   * {@value #PROFILE_FILE_PROPERTY}.
+   */
+  public static void main(String[] args) {
+    System.out.println(calibrate(Duration.ofMinutes(1), Duration.ofMillis(200)));
+  }
+
+  private static Utf8Profile loadProfile() {
+    String property = System.getProperty(PROFILE_PROPERTY);
+    if (property != null) {
+      try {
+        return usable(Utf8Profile.parse(property));
+      } catch (IllegalArgumentException e) {
+        // throwing here would leave this class, and the charset provider, unusable
+        return defaultProfile();
+      }
+    }
+    String file = System.getProperty(PROFILE_FILE_PROPERTY);
+    Path path = file == null ? null : Path.of(file);
+    if (path != null && Files.exists(path)) {
+      try {
+        return usable(Utf8Profile.parse(Files.readString(path)));
+      } catch (IOException | IllegalArgumentException e) {
+        // unreadable or from another version; ignore it, or calibrate and overwrite it
+      }
+    }
+    // without the vector module, SWAR is the only choice
+    if (VECTOR_AVAILABLE && Boolean.getBoolean(CALIBRATE_PROPERTY)) {
+      Thread.ofPlatform()
+          .name("utf8-calibration")
+          .daemon()
+          .priority(Thread.MIN_PRIORITY)
+          .start(() -> calibrateInBackground(path));
+    }
+    return defaultProfile();
+  }
+
+  private static void calibrateInBackground(Path path) {
+    Utf8Profile calibrated = calibrate(MEASURE);
+    profile = calibrated;
+    if (path != null) {
+      try {
+        Files.writeString(path, calibrated + System.lineSeparator());
+      } catch (IOException e) {
+        // the cache is only an optimization
+      }
+    }
+  }
+
+  /*
+  A saved profile may come from a JVM that had the vector module. Without
+  it, SWAR takes the place of every other engine.
+   */
+  private static Utf8Profile usable(Utf8Profile profile) {
+    if (VECTOR_AVAILABLE) {
+      return profile;
+    }
+    Engine[] engines = new Engine[Utf8Profile.bucketCount()];
+    for (int b = 0; b < engines.length; b++) {
+      engines[b] = profile.engine(b).needsVectorModule() ? Engine.SWAR : profile.engine(b);
+    }
+    return new Utf8Profile(engines);
+  }
+
+  /*
+  Calls engine on sample until it is warm, as described at WARMUP_CALLS,
+  and returns true, or returns false after maxNanos. The sample is short:
+  before the JIT compiles it, vector code runs hundreds of times slower
+  than scalar code.
+   */
+  private static boolean warmUp(Engine engine, byte[] sample, long maxNanos) {
+    boolean valid = true;
+    boolean warm = false;
+    long deadline = System.nanoTime() + maxNanos;
+    long calls = 0;
+    long previousRound = Long.MAX_VALUE;
+    while (!warm) {
+      long start = System.nanoTime();
+      for (int i = 0; i < WARMUP_ROUND_CALLS; i++) {
+        // a round before compilation can take longer than the whole warmup
+        if (System.nanoTime() - deadline >= 0) {
+          calibrationSink = valid;
+          return false;
+        }
+        valid &= validate(engine, sample, 0, sample.length);
+      }
+      long round = System.nanoTime() - start;
+      calls += WARMUP_ROUND_CALLS;
+      warm = calls >= WARMUP_CALLS && round >= previousRound;
+      previousRound = round;
+    }
+    calibrationSink = valid;
+    return warm;
+  }
+
+  private static List<Engine> candidates() {
+    List<Engine> candidates = new ArrayList<>(List.of(Engine.SWAR));
+    if (VECTOR_AVAILABLE) {
+      candidates.add(Engine.SCALAR);
+      int preferredBits = VectorEngine.preferredBitSize();
+      if (preferredBits >= 128) {
+        candidates.add(Engine.VECTOR_128);
+      }
+      if (preferredBits >= 256) {
+        candidates.add(Engine.VECTOR_256);
+      }
+      if (preferredBits >= 512) {
+        candidates.add(Engine.VECTOR_512);
+      }
+    }
+    return candidates;
+  }
+
+  /*
+  Mixed-script text half as long as the bucket's limit, or 1 MB for the
+  last bucket.
+   */
+  private static byte[] sample(int b) {
+    int limit = Utf8Profile.bucketLimit(b);
+    int size = limit == Integer.MAX_VALUE ? 1 << 20 : limit / 2;
+    try {
+      return Corpus.generate("mixed", size, 42);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /*
+  Returns the time of one call, in the fastest of 3 rounds. Each round
+  makes calls in batches of at least 64 KB of input, so the clock is read
+  rarely for short samples. Taking the fastest round skips a GC or
+  compilation that happens during the others.
+   */
+  private static double time(Engine engine, byte[] sample, long nanos) {
+    int callsPerBatch = Math.max(1, (1 << 16) / sample.length);
+    boolean valid = true;
+    double best = Double.MAX_VALUE;
+    for (int round = 0; round < 3; round++) {
+      long calls = 0;
+      long start = System.nanoTime();
+      long elapsed;
+      do {
+        for (int i = 0; i < callsPerBatch; i++) {
+          valid &= validate(engine, sample, 0, sample.length);
+        }
+        calls += callsPerBatch;
+        elapsed = System.nanoTime() - start;
+      } while (elapsed < nanos / 3);
+      best = Math.min(best, (double) elapsed / calls);
+    }
+    calibrationSink = valid;
+    return best;
+  }
+
+  /*
+  Holds the only references to vector classes, so they are
+  not loaded unless VECTOR_AVAILABLE is true.
+   */
+  private static final class VectorEngine {
+    static int preferredBitSize() {
+      return jdk.incubator.vector.ByteVector.SPECIES_PREFERRED.vectorBitSize();
+    }
+
+    static boolean validate128(byte[] buf, int off, int len) {
+      return Utf8Vector128.validate(buf, off, len);
+    }
+
+    static boolean validate256(byte[] buf, int off, int len) {
+      return Utf8Vector256.validate(buf, off, len);
+    }
+
+    static boolean validate512(byte[] buf, int off, int len) {
+      return Utf8Vector512.validate(buf, off, len);
+    }
+  }
+}
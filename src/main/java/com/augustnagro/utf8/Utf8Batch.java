@@ -0,0 +1,215 @@
+package com.augustnagro.utf8;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.lang.foreign.MemorySegment;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Objects;
+import java.util.function.IntToLongFunction;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static jdk.incubator.vector.VectorOperators.*;
+
+/**
+ * Validates many small records, like message values, in one call.
+ * <p>
+ * Records shorter than a few vectors are copied back to back into a scratch
+ * buffer and validated together, so the vectors stay full instead of each
+ * record ending in a partial vector and scalar code. Longer records are
+ * validated on their own with {@link Utf8#validate(byte[], int, int, LookupTables)}.
+ */
+public final class Utf8Batch {
+
+  /*
+  Records are separated by this many zero bytes in the scratch buffer.
+  Zero is ascii, and the kernel looks at most 3 bytes back, so no record's
+  bytes are ever compared with the previous record's. That is the same as
+  resetting the carry state at every record boundary.
+   */
+  private static final int SEPARATOR_LENGTH = 3;
+
+  /*
+  Size of the scratch buffer, and the length below which a record is
+  packed into it, in vectors.
+   */
+  private static final int SCRATCH_VECTORS = 64;
+  private static final int PACK_LIMIT_VECTORS = 4;
+
+  private Utf8Batch() {}
+
+  /**
+   * Validates the records buf[offsets[r], offsets[r] + lengths[r]), and
+   * returns a BitSet in which bit r is set if record r is valid UTF-8.
+   */
+  public static BitSet validate(byte[] buf, int[] offsets, int[] lengths, LookupTables lut) {
+    if (offsets.length != lengths.length) {
+      throw new IllegalArgumentException("offsets and lengths have different lengths");
+    }
+    for (int r = 0; r < offsets.length; r++) {
+      Objects.checkFromIndexSize(offsets[r], lengths[r], buf.length);
+    }
+    return validate(MemorySegment.ofArray(buf), buf, r -> offsets[r], lengths, lut);
+  }
+
+  /**
+   * Validates the records seg[offsets[r], offsets[r] + lengths[r]), and
+   * returns a BitSet in which bit r is set if record r is valid UTF-8.
+   */
+  public static BitSet validate(MemorySegment seg, long[] offsets, int[] lengths, LookupTables lut) {
+    if (offsets.length != lengths.length) {
+      throw new IllegalArgumentException("offsets and lengths have different lengths");
+    }
+    for (int r = 0; r < offsets.length; r++) {
+      Objects.checkFromIndexSize(offsets[r], lengths[r], seg.byteSize());
+    }
+    return validate(seg, null, r -> offsets[r], lengths, lut);
+  }
+
+  /*
+  seg holds the records; buf is its backing array, or null if it has none.
+   */
+  private static BitSet validate(
+      MemorySegment seg, byte[] buf, IntToLongFunction offsets, int[] lengths, LookupTables lut) {
+    int recordCount = lengths.length;
+    // bit r is set if record r is valid, in the layout of BitSet.valueOf
+    long[] valid = new long[(recordCount + Long.SIZE - 1) / Long.SIZE];
+    VectorSpecies<Byte> species = lut.species();
+
+    // the error lanes of a vector are collected with VectorMask.toLong
+    if (species.length() > Long.SIZE) {
+      for (int r = 0; r < recordCount; r++) {
+        if (validateOne(seg, buf, offsets.applyAsLong(r), lengths[r], lut)) {
+          valid[r >>> 6] |= 1L << r;
+        }
+      }
+      return BitSet.valueOf(valid);
+    }
+
+    byte[] scratch = new byte[SCRATCH_VECTORS * species.length()];
+    long[] errorBits = new long[(scratch.length + Long.SIZE - 1) / Long.SIZE];
+    int packLimit = PACK_LIMIT_VECTORS * species.length();
+    // the records in scratch, and where each starts
+    int[] packedRecords = new int[scratch.length / SEPARATOR_LENGTH];
+    int[] packedStarts = new int[scratch.length / SEPARATOR_LENGTH + 1];
+    int packedCount = 0;
+    int fill = 0;
+
+    for (int r = 0; r < recordCount; r++) {
+      long off = offsets.applyAsLong(r);
+      int len = lengths[r];
+      if (len >= packLimit) {
+        if (validateOne(seg, buf, off, len, lut)) {
+          valid[r >>> 6] |= 1L << r;
+        }
+        continue;
+      }
+      if (fill + len + SEPARATOR_LENGTH > scratch.length) {
+        packedStarts[packedCount] = fill;
+        validatePacked(scratch, fill, errorBits, packedRecords, packedStarts, packedCount, valid, lut);
+        packedCount = 0;
+        fill = 0;
+      }
+      if (buf != null) {
+        System.arraycopy(buf, (int) off, scratch, fill, len);
+      } else {
+        MemorySegment.copy(seg, JAVA_BYTE, off, scratch, fill, len);
+      }
+      scratch[fill + len] = 0;
+      scratch[fill + len + 1] = 0;
+      scratch[fill + len + 2] = 0;
+      packedRecords[packedCount] = r;
+      packedStarts[packedCount] = fill;
+      packedCount++;
+      fill += len + SEPARATOR_LENGTH;
+    }
+    packedStarts[packedCount] = fill;
+    validatePacked(scratch, fill, errorBits, packedRecords, packedStarts, packedCount, valid, lut);
+    return BitSet.valueOf(valid);
+  }
+
+  private static boolean validateOne(MemorySegment seg, byte[] buf, long off, int len, LookupTables lut) {
+    if (buf != null) {
+      return Utf8.validate(buf, (int) off, len, lut);
+    }
+    return Utf8.validate(seg.asSlice(off, len), lut);
+  }
+
+  /*
+  Validates scratch[0, fill), which holds packedCount records followed by
+  their separators, and sets the bits of the valid ones.
+
+  Every lane where testUtf8 finds an error is recorded in errorBits, which
+  is only cleared and read when there are errors. An error
+  is always reported at a lane of the bad sequence, or at most 3 lanes after
+  it when continuation bytes are missing, so the errors of the record
+  starting at packedStarts[k] are all in [packedStarts[k], packedStarts[k + 1]).
+
+  Unlike Utf8.validate, prevInputBlock is updated for every vector, and an
+  ascii vector is skipped only when the one before it ended with complete chars.
+   */
+  private static void validatePacked(
+      byte[] scratch, int fill, long[] errorBits,
+      int[] packedRecords, int[] packedStarts, int packedCount,
+      long[] valid, LookupTables lut) {
+    VectorSpecies<Byte> species = lut.species();
+    ByteVector isIncompleteAnd = lut.isIncompleteAnd();
+    ByteVector isIncompleteEq = lut.isIncompleteEq();
+    int end = species.loopBound(fill + species.length() - 1);
+    Arrays.fill(scratch, fill, end, (byte) 0);
+
+    ByteVector prevInputBlock = ByteVector.zero(species);
+    boolean prevIncomplete = false;
+    boolean anyError = false;
+    for (int i = 0; i < end; i += species.length()) {
+      ByteVector input = ByteVector.fromArray(species, scratch, i);
+      if (prevIncomplete || input.test(IS_NEGATIVE).anyTrue()) {
+        VectorMask<Byte> error = Utf8.testUtf8(input, prevInputBlock, lut).compare(NE, (byte) 0);
+        if (error.anyTrue()) {
+          if (!anyError) {
+            Arrays.fill(errorBits, 0L);
+            anyError = true;
+          }
+          // the species length is a power of two no larger than 64, so i's lanes share one long
+          errorBits[i >>> 6] |= error.toLong() << (i & (Long.SIZE - 1));
+        }
+        prevIncomplete = input.and(isIncompleteAnd).eq(isIncompleteEq).anyTrue();
+      }
+      prevInputBlock = input;
+    }
+
+    for (int k = 0; k < packedCount; k++) {
+      if (!anyError || !anyBitSet(errorBits, packedStarts[k], packedStarts[k + 1])) {
+        int r = packedRecords[k];
+        valid[r >>> 6] |= 1L << r;
+      }
+    }
+  }
+
+  /*
+  Returns true if any bit in [from, to) of bits is set.
+   */
+  private static boolean anyBitSet(long[] bits, int from, int to) {
+    if (from >= to) {
+      return false;
+    }
+    int first = from >>> 6;
+    int last = (to - 1) >>> 6;
+    long firstMask = -1L << from;
+    long lastMask = -1L >>> -to;
+    if (first == last) {
+      return (bits[first] & firstMask & lastMask) != 0;
+    }
+    if ((bits[first] & firstMask) != 0 || (bits[last] & lastMask) != 0) {
+      return true;
+    }
+    for (int w = first + 1; w < last; w++) {
+      if (bits[w] != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
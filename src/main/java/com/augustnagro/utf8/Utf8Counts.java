@@ -0,0 +1,11 @@
+package com.augustnagro.utf8;
+
+/**
+ * The sizes of some valid UTF-8, as returned by
+ * {@link Utf8#validateAndCount(byte[], int, int, LookupTables)}.
+ *
+ * @param codePoints  number of code points.
+ * @param utf16Length number of chars needed to decode it to UTF-16.
+ */
+public record Utf8Counts(long codePoints, long utf16Length) {
+}
@@ -0,0 +1,241 @@
+package com.augustnagro.utf8;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.Vector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Objects;
+
+import static jdk.incubator.vector.VectorOperators.*;
+
+/**
+ * Decodes UTF-8 to UTF-16, validating it in the same pass
+ * with the kernel from {@link Utf8#validate(byte[], LookupTables)}.
+ */
+public final class Utf8Decoder {
+
+  private Utf8Decoder() {}
+
+  /**
+   * Decodes src[off, off + len) into dst, starting at dstOff, and returns the
+   * number of chars written, or -1 if the input is not valid UTF-8.
+   * <p>
+   * dst must have room for len chars after dstOff, since that is the most
+   * len bytes can decode to. Chars in that room past the decoded ones may be
+   * overwritten, and when the input is invalid, all of it is unspecified.
+   */
+  public static int decode(byte[] src, int off, int len, char[] dst, int dstOff, LookupTables lut) {
+    Objects.checkFromIndexSize(off, len, src.length);
+    Objects.checkFromIndexSize(dstOff, len, dst.length);
+    int end = off + len;
+    VectorSpecies<Byte> species = lut.species();
+    int halfLength = species.length() / 2;
+    ByteVector isIncompleteAnd = lut.isIncompleteAnd();
+    ByteVector isIncompleteEq = lut.isIncompleteEq();
+
+    ByteVector error = ByteVector.zero(species);
+    Vector<Byte> prevIncomplete = ByteVector.zero(species);
+    ByteVector prevInputBlock = ByteVector.zero(species);
+
+    int i = off;
+    int dp = dstOff;
+    for (; i < off + species.loopBound(len); i += species.length()) {
+      ByteVector input = ByteVector.fromArray(species, src, i);
+
+      if (!input.test(IS_NEGATIVE).anyTrue()) {
+        error = error.or(prevIncomplete);
+        // every byte is a char; widen each half of the vector to 16 bit lanes.
+        ((ShortVector) input.convert(B2S, 0)).intoCharArray(dst, dp);
+        ((ShortVector) input.convert(B2S, 1)).intoCharArray(dst, dp + halfLength);
+        dp += species.length();
+      } else {
+        error = error.or(Utf8.testUtf8(input, prevInputBlock, lut));
+        ByteVector prev1 = prevInputBlock.slice(species.length() - 1, input);
+        ByteVector prev2 = prevInputBlock.slice(species.length() - 2, input);
+        ByteVector prev3 = prevInputBlock.slice(species.length() - 3, input);
+        /*
+        Only the cases for the longest char ending in this block are computed.
+        A 3-byte char ends where prev2 is its leading byte, and a 4-byte char
+        ends where prev2 or prev3 is (high and low surrogate).
+         */
+        int maxCharLength;
+        if (prev2.compare(UNSIGNED_GE, (byte) 0b11110000)
+            .or(prev3.compare(UNSIGNED_GE, (byte) 0b11110000)).anyTrue()) {
+          maxCharLength = 4;
+        } else if (prev2.compare(UNSIGNED_GE, (byte) 0b11100000).anyTrue()) {
+          maxCharLength = 3;
+        } else {
+          maxCharLength = 2;
+        }
+        dp = decodeHalf(input, prev1, prev2, prev3, maxCharLength, 0, dst, dp);
+        dp = decodeHalf(input, prev1, prev2, prev3, maxCharLength, 1, dst, dp);
+        prevIncomplete = input.and(isIncompleteAnd).eq(isIncompleteEq).toVector();
+        prevInputBlock = input;
+      }
+    }
+
+    if (!error.test(IS_DEFAULT).allTrue()) {
+      return -1;
+    }
+    int tailStart = firstUndecodedByte(src, off, i);
+    if (i - tailStart == 3 && (src[tailStart] & 0xff) >= 0b11110000) {
+      // a 4-byte char cut off after its third byte, which already wrote the high surrogate
+      dp--;
+    }
+    int written = scalarDecode(tailStart, end, src, dst, dp);
+    return written < 0 ? -1 : written - dstOff;
+  }
+
+  /**
+   * Returns src[off, off + len) as a String, or null if it is not valid UTF-8.
+   */
+  public static String decodeToString(byte[] src, int off, int len, LookupTables lut) {
+    char[] chars = new char[len];
+    int n = decode(src, off, len, chars, 0, lut);
+    return n < 0 ? null : new String(chars, 0, n);
+  }
+
+  /*
+  Writes the UTF-16 for the chars that end in one half of the input vector,
+  where no char is longer than maxCharLength bytes.
+
+  Once the block is known to be valid, lane k ends a char when
+  -> it is ascii,
+  -> prev1 is the leading byte of a 2-byte char,
+  -> prev2 is the leading byte of a 3-byte char, or
+  -> prev3 is the leading byte of a 4-byte char. This lane gets the low surrogate.
+  The high surrogate of a 4-byte char goes in the lane before it, where prev2
+  is the leading byte. Every char's value only depends on its own lane and
+  the three before, so nothing is carried except prevInputBlock.
+
+  The values are computed in every lane, and then the lanes that end a char
+  are compressed to the front and stored.
+   */
+  private static int decodeHalf(
+      ByteVector input, ByteVector prev1, ByteVector prev2, ByteVector prev3,
+      int maxCharLength, int part, char[] dst, int dp) {
+    ShortVector b = ((ShortVector) input.convert(B2S, part)).and((short) 0xff);
+    ShortVector p1 = ((ShortVector) prev1.convert(B2S, part)).and((short) 0xff);
+    ShortVector cont = b.and((short) 0b00111111);
+
+    VectorMask<Short> ends2 = p1.and((short) 0b11100000).eq((short) 0b11000000);
+    VectorMask<Short> endsChar = b.lt((short) 0x80).or(ends2);
+    ShortVector value = b.blend(p1.and((short) 0b00011111).lanewise(LSHL, 6).or(cont), ends2);
+
+    if (maxCharLength >= 3) {
+      ShortVector p2 = ((ShortVector) prev2.convert(B2S, part)).and((short) 0xff);
+      VectorMask<Short> ends3 = p2.and((short) 0b11110000).eq((short) 0b11100000);
+      endsChar = endsChar.or(ends3);
+      value = value.blend(p2.and((short) 0b00001111).lanewise(LSHL, 12)
+          .or(p1.and((short) 0b00111111).lanewise(LSHL, 6))
+          .or(cont), ends3);
+
+      if (maxCharLength == 4) {
+        ShortVector p3 = ((ShortVector) prev3.convert(B2S, part)).and((short) 0xff);
+        VectorMask<Short> ends4 = p3.and((short) 0b11111000).eq((short) 0b11110000);
+        VectorMask<Short> high4 = p2.and((short) 0b11111000).eq((short) 0b11110000);
+        endsChar = endsChar.or(ends4).or(high4);
+        value = value
+            .blend(p1.and((short) 0b00001111).lanewise(LSHL, 6)
+                .or(cont)
+                .or((short) 0xdc00), ends4)
+            // the high surrogate holds bits 10 to 20 of the code point, minus 0x10000
+            .blend(p2.and((short) 0b00000111).lanewise(LSHL, 8)
+                .or(p1.and((short) 0b00111111).lanewise(LSHL, 2))
+                .or(b.lanewise(LSHR, 4).and((short) 0b11))
+                .sub((short) 0x40)
+                .or((short) 0xd800), high4);
+      }
+    }
+
+    /*
+    A full store is always in bounds: at most as many chars as bytes have been
+    decoded so far, and dst has room for len chars. The lanes past trueCount
+    are overwritten by the next store, or left past the end of the output.
+     */
+    value.compress(endsChar).intoCharArray(dst, dp);
+    return dp + endsChar.trueCount();
+  }
+
+  /*
+  Returns the index of the first byte not yet decoded by the vector loop,
+  which stopped at i: the leading byte of a char cut off by the end of the
+  last vector, or i itself.
+   */
+  private static int firstUndecodedByte(byte[] src, int off, int i) {
+    for (int j = 1; j <= 3 && i - j >= off; j++) {
+      int b = src[i - j] & 0xff;
+      if ((b & 0b11000000) != 0b10000000) {
+        boolean cutOff = (b >= 0b11000000 && j < 2)
+            || (b >= 0b11100000 && j < 3)
+            || (b >= 0b11110000 && j < 4);
+        return cutOff ? i - j : i;
+      }
+    }
+    return i;
+  }
+
+  /*
+  Decodes src[pos, end) into dst from dp, and returns the new dp,
+  or -1 if the input is not valid UTF-8.
+   */
+  static int scalarDecode(int pos, int end, byte[] src, char[] dst, int dp) {
+    while (pos < end) {
+      int byte0 = src[pos] & 0xff;
+      if (byte0 < 0b10000000) {
+        dst[dp++] = (char) byte0;
+        pos++;
+        continue;
+      }
+
+      if ((byte0 & 0b11100000) == 0b11000000) {
+        if (pos + 2 > end || (src[pos + 1] & 0b11000000) != 0b10000000) {
+          return -1;
+        }
+        int codePoint = ((byte0 & 0b00011111) << 6) | (src[pos + 1] & 0b00111111);
+        if (codePoint < 0x80) {
+          return -1;
+        }
+        dst[dp++] = (char) codePoint;
+        pos += 2;
+      } else if ((byte0 & 0b11110000) == 0b11100000) {
+        if (pos + 3 > end
+            || (src[pos + 1] & 0b11000000) != 0b10000000
+            || (src[pos + 2] & 0b11000000) != 0b10000000) {
+          return -1;
+        }
+        int codePoint = ((byte0 & 0b00001111) << 12)
+            | ((src[pos + 1] & 0b00111111) << 6)
+            | (src[pos + 2] & 0b00111111);
+        if (codePoint < 0x800 || (0xd7ff < codePoint && codePoint < 0xe000)) {
+          return -1;
+        }
+        dst[dp++] = (char) codePoint;
+        pos += 3;
+      } else if ((byte0 & 0b11111000) == 0b11110000) {
+        if (pos + 4 > end
+            || (src[pos + 1] & 0b11000000) != 0b10000000
+            || (src[pos + 2] & 0b11000000) != 0b10000000
+            || (src[pos + 3] & 0b11000000) != 0b10000000) {
+          return -1;
+        }
+        int codePoint = ((byte0 & 0b00000111) << 18)
+            | ((src[pos + 1] & 0b00111111) << 12)
+            | ((src[pos + 2] & 0b00111111) << 6)
+            | (src[pos + 3] & 0b00111111);
+        if (codePoint <= 0xffff || 0x10ffff < codePoint) {
+          return -1;
+        }
+        dst[dp++] = Character.highSurrogate(codePoint);
+        dst[dp++] = Character.lowSurrogate(codePoint);
+        pos += 4;
+      } else {
+        // continuation byte without a leading byte, or 0xf8 and above
+        return -1;
+      }
+    }
+    return dp;
+  }
+}
@@ -0,0 +1,279 @@
+package com.augustnagro.utf8;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Objects;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static jdk.incubator.vector.VectorOperators.*;
+
+/**
+ * Encodes UTF-16 to UTF-8.
+ * <p>
+ * The methods take a {@link LookupTables} like the rest of the library,
+ * but only use its vector shape. dst must have room for the encoded bytes,
+ * which are at most 3 per char; otherwise an IndexOutOfBoundsException may
+ * be thrown. Bytes past the encoded ones may be overwritten, but only those
+ * within 3 bytes per char of the start, and never past the end of dst.
+ */
+public final class Utf8Encoder {
+
+  /**
+   * What to do with a surrogate char that is not part of a high-low pair.
+   */
+  public enum SurrogatePolicy {
+    /** Stop encoding and return -1. */
+    REJECT,
+    /** Write U+FFFD, the replacement character. */
+    REPLACE,
+    /** Write the surrogate as a 3-byte sequence, like WTF-8 does. */
+    ENCODE
+  }
+
+  /*
+  Strings and other CharSequences are copied into a char[] of at most this
+  many chars at a time, so they can be loaded into vectors.
+   */
+  private static final int CHUNK_LENGTH = 1024;
+
+  private Utf8Encoder() {}
+
+  /**
+   * Encodes src[off, off + len) into dst, starting at dstOff, and returns the
+   * number of bytes written, or -1 if policy is REJECT and there is an
+   * unpaired surrogate.
+   */
+  public static int encode(
+      char[] src, int off, int len, byte[] dst, int dstOff,
+      SurrogatePolicy policy, LookupTables lut) {
+    Objects.checkIndex(dstOff, dst.length + 1);
+    MemorySegment room = MemorySegment.ofArray(dst).asSlice(dstOff, Math.min(3L * len, dst.length - dstOff));
+    return (int) encode(src, off, len, room, 0, policy, lut);
+  }
+
+  /**
+   * Encodes src[off, off + len) into dst from its position, and returns the
+   * number of bytes written, or -1 if policy is REJECT and there is an
+   * unpaired surrogate. The position of dst is advanced past the encoded bytes.
+   */
+  public static int encode(
+      char[] src, int off, int len, ByteBuffer dst,
+      SurrogatePolicy policy, LookupTables lut) {
+    int written = (int) encode(src, off, len, MemorySegment.ofBuffer(dst), 0, policy, lut);
+    if (written > 0) {
+      dst.position(dst.position() + written);
+    }
+    return written;
+  }
+
+  /**
+   * Encodes src[off, off + len) into dst, starting at dstOff, and returns the
+   * number of bytes written, or -1 if policy is REJECT and there is an
+   * unpaired surrogate.
+   */
+  public static long encode(
+      char[] src, int off, int len, MemorySegment dst, long dstOff,
+      SurrogatePolicy policy, LookupTables lut) {
+    Objects.checkFromIndexSize(off, len, src.length);
+    VectorShape shape = lut.species().vectorShape();
+    VectorSpecies<Short> species = VectorSpecies.of(short.class, shape);
+    VectorSpecies<Byte> narrow = VectorSpecies.of(byte.class, VectorShape.forBitSize(shape.vectorBitSize() / 2));
+    int end = off + len;
+    // full vector stores must not go past this, even if dst is larger
+    long limit = Math.min(dstOff + 3L * len, dst.byteSize());
+
+    int i = off;
+    long dp = dstOff;
+    while (i + species.length() <= end) {
+      ShortVector input = ShortVector.fromCharArray(species, src, i);
+
+      if (input.compare(UNSIGNED_LT, (short) 0x80).allTrue()) {
+        // ascii: narrow every lane to a byte
+        ((ByteVector) input.convertShape(S2B, narrow, 0)).intoMemorySegment(dst, dp, ByteOrder.LITTLE_ENDIAN);
+        dp += species.length();
+        i += species.length();
+      } else if (input.compare(UNSIGNED_LT, (short) 0x800).allTrue()) {
+        dp = encode2(input, dst, dp, limit);
+        i += species.length();
+      } else if (!input.and((short) 0xf800).eq((short) 0xd800).anyTrue()) {
+        dp = encode3(input, 0, dst, dp, limit);
+        dp = encode3(input, 1, dst, dp, limit);
+        i += species.length();
+      } else {
+        // keep a surrogate pair in one piece if the vector splits it
+        int to = i + species.length();
+        if (Character.isHighSurrogate(src[to - 1]) && to < end && Character.isLowSurrogate(src[to])) {
+          to++;
+        }
+        dp = scalarEncode(src, i, to, dst, dp, policy);
+        if (dp < 0) {
+          return -1;
+        }
+        i = to;
+      }
+    }
+
+    dp = scalarEncode(src, i, end, dst, dp, policy);
+    return dp < 0 ? -1 : dp - dstOff;
+  }
+
+  /**
+   * Encodes all of src into dst, starting at dstOff, and returns the number
+   * of bytes written, or -1 if policy is REJECT and there is an unpaired surrogate.
+   */
+  public static int encode(
+      CharSequence src, byte[] dst, int dstOff,
+      SurrogatePolicy policy, LookupTables lut) {
+    Objects.checkIndex(dstOff, dst.length + 1);
+    MemorySegment room = MemorySegment.ofArray(dst).asSlice(dstOff, Math.min(3L * src.length(), dst.length - dstOff));
+    return (int) encode(src, room, 0, policy, lut);
+  }
+
+  /**
+   * Encodes all of src into dst from its position, and returns the number of
+   * bytes written, or -1 if policy is REJECT and there is an unpaired surrogate.
+   * The position of dst is advanced past the encoded bytes.
+   */
+  public static int encode(
+      CharSequence src, ByteBuffer dst,
+      SurrogatePolicy policy, LookupTables lut) {
+    int written = (int) encode(src, MemorySegment.ofBuffer(dst), 0, policy, lut);
+    if (written > 0) {
+      dst.position(dst.position() + written);
+    }
+    return written;
+  }
+
+  /**
+   * Encodes all of src into dst, starting at dstOff, and returns the number
+   * of bytes written, or -1 if policy is REJECT and there is an unpaired surrogate.
+   */
+  public static long encode(
+      CharSequence src, MemorySegment dst, long dstOff,
+      SurrogatePolicy policy, LookupTables lut) {
+    int length = src.length();
+    char[] chunk = new char[Math.min(length, CHUNK_LENGTH)];
+    long dp = dstOff;
+    int i = 0;
+    while (i < length) {
+      int n = Math.min(length - i, chunk.length);
+      // don't split a surrogate pair between chunks
+      if (n > 1 && i + n < length && Character.isHighSurrogate(src.charAt(i + n - 1))) {
+        n--;
+      }
+      if (src instanceof String s) {
+        s.getChars(i, i + n, chunk, 0);
+      } else {
+        for (int j = 0; j < n; j++) {
+          chunk[j] = src.charAt(i + j);
+        }
+      }
+      long written = encode(chunk, 0, n, dst, dp, policy, lut);
+      if (written < 0) {
+        return -1;
+      }
+      dp += written;
+      i += n;
+    }
+    return dp - dstOff;
+  }
+
+  /*
+  Every char is below 0x800, so it takes 1 or 2 bytes. Each 16 bit lane gets
+  both bytes of its char, the first in the low half since reinterpretAsBytes
+  is little-endian. The unused second byte of ascii chars is compressed away.
+   */
+  private static long encode2(ShortVector input, MemorySegment dst, long dp, long limit) {
+    VectorMask<Short> isAscii = input.lt((short) 0x80);
+    ShortVector twoBytes = input.lanewise(LSHR, 6).or((short) 0b11000000)
+        .or(input.and((short) 0b00111111).or((short) 0b10000000).lanewise(LSHL, 8));
+    ShortVector value = twoBytes.blend(input, isAscii);
+    ShortVector keep = ShortVector.broadcast(input.species(), (short) 0xffff)
+        .blend((short) 0x00ff, isAscii);
+    return store(value.reinterpretAsBytes(), keep.reinterpretAsBytes(), dst, dp, limit);
+  }
+
+  /*
+  Every char is below 0x10000 and not a surrogate, so it takes 1 to 3 bytes.
+  Like encode2, but with 32 bit lanes for one half of the input vector.
+   */
+  private static long encode3(ShortVector input, int part, MemorySegment dst, long dp, long limit) {
+    IntVector c = ((IntVector) input.convert(S2I, part)).and(0xffff);
+    VectorMask<Integer> twoOrMore = c.compare(GE, 0x80);
+    VectorMask<Integer> three = c.compare(GE, 0x800);
+
+    IntVector byte0 = c
+        .blend(c.lanewise(LSHR, 6).or(0b11000000), twoOrMore)
+        .blend(c.lanewise(LSHR, 12).or(0b11100000), three);
+    IntVector byte1 = c.and(0b00111111)
+        .blend(c.lanewise(LSHR, 6).and(0b00111111), three)
+        .or(0b10000000);
+    IntVector byte2 = c.and(0b00111111).or(0b10000000);
+    IntVector value = byte0
+        .or(byte1.lanewise(LSHL, 8))
+        .or(byte2.lanewise(LSHL, 16));
+
+    IntVector keep = IntVector.broadcast(c.species(), 0xff)
+        .blend(0xffff, twoOrMore)
+        .blend(0xffffff, three);
+    return store(value.reinterpretAsBytes(), keep.reinterpretAsBytes(), dst, dp, limit);
+  }
+
+  /*
+  Stores the bytes whose keep lane is non-zero, in order, and returns the new dp.
+  The whole vector is stored if it ends by limit, and otherwise only the kept bytes.
+   */
+  private static long store(ByteVector bytes, ByteVector keep, MemorySegment dst, long dp, long limit) {
+    VectorMask<Byte> keepMask = keep.compare(NE, (byte) 0);
+    ByteVector compressed = bytes.compress(keepMask);
+    if (dp + bytes.length() <= limit) {
+      compressed.intoMemorySegment(dst, dp, ByteOrder.LITTLE_ENDIAN);
+    } else {
+      compressed.intoMemorySegment(dst, dp, ByteOrder.LITTLE_ENDIAN, keepMask.compress());
+    }
+    return dp + keepMask.trueCount();
+  }
+
+  /*
+  Encodes src[i, end) one char at a time from dp, and returns the new dp, or
+  -1 for an unpaired surrogate under REJECT. A high surrogate at end - 1 is unpaired.
+   */
+  private static long scalarEncode(
+      char[] src, int i, int end, MemorySegment dst, long dp, SurrogatePolicy policy) {
+    while (i < end) {
+      char c = src[i++];
+      if (c < 0x80) {
+        dst.set(JAVA_BYTE, dp++, (byte) c);
+      } else if (c < 0x800) {
+        dst.set(JAVA_BYTE, dp++, (byte) (0b11000000 | (c >> 6)));
+        dst.set(JAVA_BYTE, dp++, (byte) (0b10000000 | (c & 0b00111111)));
+      } else if (Character.isHighSurrogate(c) && i < end && Character.isLowSurrogate(src[i])) {
+        int codePoint = Character.toCodePoint(c, src[i++]);
+        dst.set(JAVA_BYTE, dp++, (byte) (0b11110000 | (codePoint >> 18)));
+        dst.set(JAVA_BYTE, dp++, (byte) (0b10000000 | ((codePoint >> 12) & 0b00111111)));
+        dst.set(JAVA_BYTE, dp++, (byte) (0b10000000 | ((codePoint >> 6) & 0b00111111)));
+        dst.set(JAVA_BYTE, dp++, (byte) (0b10000000 | (codePoint & 0b00111111)));
+      } else {
+        if (Character.isSurrogate(c)) {
+          if (policy == SurrogatePolicy.REJECT) {
+            return -1;
+          } else if (policy == SurrogatePolicy.REPLACE) {
+            c = '\uFFFD';
+          }
+        }
+        dst.set(JAVA_BYTE, dp++, (byte) (0b11100000 | (c >> 12)));
+        dst.set(JAVA_BYTE, dp++, (byte) (0b10000000 | ((c >> 6) & 0b00111111)));
+        dst.set(JAVA_BYTE, dp++, (byte) (0b10000000 | (c & 0b00111111)));
+      }
+    }
+    return dp;
+  }
+}
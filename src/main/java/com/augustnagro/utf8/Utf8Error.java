@@ -0,0 +1,33 @@
+package com.augustnagro.utf8;
+
+import java.io.Serializable;
+
+/**
+ * The first invalid sequence found in some input.
+ *
+ * @param offset index of the first byte of the invalid sequence. All bytes
+ *               before it (within the validated range) are valid UTF-8.
+ * @param kind   which UTF-8 rule the sequence breaks.
+ */
+public record Utf8Error(long offset, Kind kind) implements Serializable {
+
+  /**
+   * The error classes checked by the lookup tables in {@link Util}.
+   */
+  public enum Kind {
+    /** A leading byte is not followed by enough continuation bytes. */
+    TOO_SHORT,
+    /** A continuation byte does not follow a leading byte. */
+    TOO_LONG,
+    /** A 2-byte char that fits in 1 byte (leading byte 0xC0 or 0xC1). */
+    OVERLONG_2,
+    /** A 3-byte char that fits in 2 bytes. */
+    OVERLONG_3,
+    /** A 4-byte char that fits in 3 bytes. */
+    OVERLONG_4,
+    /** An encoded UTF-16 surrogate, U+D800 to U+DFFF. */
+    SURROGATE,
+    /** A char above U+10FFFF. */
+    TOO_LARGE
+  }
+}
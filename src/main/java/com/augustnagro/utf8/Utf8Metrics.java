@@ -0,0 +1,203 @@
+package com.augustnagro.utf8;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Optional counters and JFR events for the validate methods of {@link Utf8}.
+ * <p>
+ * Off unless the JVM is started with {@code -D}{@value #ENABLED_PROPERTY}{@code =true}.
+ * The flag is read once into a static final field, so when it is off the
+ * JIT removes the checks of it, and the validate methods run the same code
+ * as without metrics. When it is on, they run copies that also:
+ * <ul>
+ *   <li>update the counters of {@link Utf8MetricsMXBean}, kept in LongAdders
+ *   and registered with the platform MBeanServer as {@value #OBJECT_NAME};</li>
+ *   <li>emit a {@code com.augustnagro.utf8.Validation} JFR event for each
+ *   input at least as long as the system property {@value #EVENT_THRESHOLD_PROPERTY}
+ *   (default 1 MB), when a recording enables the event.</li>
+ * </ul>
+ * Covered are {@link Utf8#validate(byte[], int, int, LookupTables)},
+ * {@link Utf8#validate(java.lang.foreign.MemorySegment, LookupTables)} and the
+ * methods built on them, the scalarValidUtf8 methods, {@link Utf8#firstError}
+ * and {@link Utf8Validator}.
+ */
+public final class Utf8Metrics implements Utf8MetricsMXBean {
+
+  /** System property that turns metrics on. */
+  public static final String ENABLED_PROPERTY = "com.augustnagro.utf8.metrics";
+
+  /** System property with the smallest input, in bytes, that gets a JFR event. */
+  public static final String EVENT_THRESHOLD_PROPERTY = "com.augustnagro.utf8.metrics.eventThreshold";
+
+  /** Name of the MXBean. */
+  public static final String OBJECT_NAME = "com.augustnagro.utf8:type=Utf8Metrics";
+
+  static final boolean ENABLED = Boolean.getBoolean(ENABLED_PROPERTY);
+  private static final long EVENT_THRESHOLD = Long.getLong(EVENT_THRESHOLD_PROPERTY, 1 << 20);
+
+  private static final Utf8Metrics INSTANCE = new Utf8Metrics();
+
+  private final LongAdder bytesValidated = new LongAdder();
+  private final LongAdder asciiBlocks = new LongAdder();
+  private final LongAdder nonAsciiBlocks = new LongAdder();
+  private final LongAdder scalarBytes = new LongAdder();
+  private final LongAdder invalidInputs = new LongAdder();
+  private final LongAdder[] errorsByKind = new LongAdder[Utf8Error.Kind.values().length];
+
+  static {
+    if (ENABLED) {
+      try {
+        ManagementFactory.getPlatformMBeanServer()
+            .registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+      } catch (JMException e) {
+        // already registered by another copy of this class; the counters still work
+      }
+    }
+  }
+
+  private Utf8Metrics() {
+    for (int k = 0; k < errorsByKind.length; k++) {
+      errorsByKind[k] = new LongAdder();
+    }
+  }
+
+  /**
+   * Returns true if metrics are being collected.
+   */
+  public static boolean isEnabled() {
+    return ENABLED;
+  }
+
+  /**
+   * Returns the counters. They stay zero unless {@link #isEnabled()}.
+   */
+  public static Utf8Metrics get() {
+    return INSTANCE;
+  }
+
+  @Override
+  public long getBytesValidated() {
+    return bytesValidated.sum();
+  }
+
+  @Override
+  public long getAsciiBlocks() {
+    return asciiBlocks.sum();
+  }
+
+  @Override
+  public long getNonAsciiBlocks() {
+    return nonAsciiBlocks.sum();
+  }
+
+  @Override
+  public long getScalarBytes() {
+    return scalarBytes.sum();
+  }
+
+  @Override
+  public long getInvalidInputs() {
+    return invalidInputs.sum();
+  }
+
+  @Override
+  public Map<String, Long> getErrorsByKind() {
+    Map<String, Long> errors = new LinkedHashMap<>();
+    for (Utf8Error.Kind kind : Utf8Error.Kind.values()) {
+      errors.put(kind.name(), errorsByKind[kind.ordinal()].sum());
+    }
+    return errors;
+  }
+
+  @Override
+  public void reset() {
+    bytesValidated.reset();
+    asciiBlocks.reset();
+    nonAsciiBlocks.reset();
+    scalarBytes.reset();
+    invalidInputs.reset();
+    for (LongAdder errors : errorsByKind) {
+      errors.reset();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "Utf8Metrics[bytesValidated=" + getBytesValidated()
+        + ", asciiBlocks=" + getAsciiBlocks()
+        + ", nonAsciiBlocks=" + getNonAsciiBlocks()
+        + ", scalarBytes=" + getScalarBytes()
+        + ", invalidInputs=" + getInvalidInputs()
+        + ", errorsByKind=" + getErrorsByKind() + "]";
+  }
+
+  // the methods below are only called when ENABLED
+
+  /*
+  Returns a started event for an input of the given length, or null if
+  it is too short or no recording wants the event.
+   */
+  static Utf8ValidationEvent beginEvent(long length) {
+    if (length < EVENT_THRESHOLD) {
+      return null;
+    }
+    Utf8ValidationEvent event = new Utf8ValidationEvent();
+    if (!event.isEnabled()) {
+      return null;
+    }
+    event.begin();
+    return event;
+  }
+
+  /*
+  Records one call to a vector validate method with vectors of
+  vectorLength bytes: length bytes in total, of which the first
+  vectorBytes were loaded as vectors (asciiBlocks of them all ascii) and
+  the rest checked without vectors.
+   */
+  static void validated(
+      Utf8ValidationEvent event, int vectorLength,
+      long length, long vectorBytes, long asciiBlocks, boolean valid) {
+    long blocks = vectorBytes / vectorLength;
+    INSTANCE.bytesValidated.add(length);
+    INSTANCE.asciiBlocks.add(asciiBlocks);
+    INSTANCE.nonAsciiBlocks.add(blocks - asciiBlocks);
+    INSTANCE.scalarBytes.add(length - vectorBytes);
+    if (!valid) {
+      INSTANCE.invalidInputs.increment();
+    }
+    if (event != null) {
+      event.end();
+      if (event.shouldCommit()) {
+        event.vectorBits = 8 * vectorLength;
+        event.bytes = length;
+        event.asciiBlocks = asciiBlocks;
+        event.nonAsciiBlocks = blocks - asciiBlocks;
+        event.valid = valid;
+        event.commit();
+      }
+    }
+  }
+
+  /*
+  Records a call to a scalarValidUtf8 method on length bytes.
+   */
+  static void scalarValidated(long length) {
+    INSTANCE.bytesValidated.add(length);
+    INSTANCE.scalarBytes.add(length);
+  }
+
+  /*
+  Records an error found by firstError or Utf8Validator.
+   */
+  static void error(Utf8Error error) {
+    if (error != null) {
+      INSTANCE.errorsByKind[error.kind().ordinal()].increment();
+    }
+  }
+}
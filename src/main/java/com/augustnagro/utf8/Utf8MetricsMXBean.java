@@ -0,0 +1,32 @@
+package com.augustnagro.utf8;
+
+import java.util.Map;
+
+/**
+ * The counters of {@link Utf8Metrics}, as seen over JMX under the name
+ * {@value Utf8Metrics#OBJECT_NAME}. All are cumulative since startup or the
+ * last {@link #reset()}.
+ */
+public interface Utf8MetricsMXBean {
+
+  /** Bytes passed to the validate methods of {@link Utf8}. */
+  long getBytesValidated();
+
+  /** Blocks skipped by the ascii shortcut in the vector loops. */
+  long getAsciiBlocks();
+
+  /** Blocks checked by {@code Utf8.testUtf8}. */
+  long getNonAsciiBlocks();
+
+  /** Bytes left after the last full vector, plus those passed to scalarValidUtf8. */
+  long getScalarBytes();
+
+  /** Inputs found to be invalid by the validate methods. */
+  long getInvalidInputs();
+
+  /** Errors found by {@link Utf8#firstError} and {@link Utf8Validator}, by kind. */
+  Map<String, Long> getErrorsByKind();
+
+  /** Sets every counter to zero. */
+  void reset();
+}
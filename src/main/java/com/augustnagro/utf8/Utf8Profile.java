@@ -0,0 +1,146 @@
+package com.augustnagro.utf8;
+
+import java.util.Arrays;
+
+/**
+ * Which engine {@link Utf8Auto} uses for each range of input lengths.
+ * <p>
+ * The lengths are split into buckets below 64, 512, 4096 and 65536 bytes,
+ * and one for all longer inputs. A profile is written as one
+ * {@code limit=ENGINE} pair per bucket, like
+ * {@code 64=SWAR,512=VECTOR_256,4096=VECTOR_256,65536=VECTOR_256,max=VECTOR_512},
+ * where the bucket with limit L holds lengths below L and at or above the
+ * limit before it. {@link #toString()} and {@link #parse(String)} use this
+ * form, so a calibrated profile can be logged, saved, and read back.
+ */
+public final class Utf8Profile {
+
+  /**
+   * The ways Utf8Auto can validate.
+   */
+  public enum Engine {
+    /**
+     * {@link Utf8#scalarValidUtf8(int, int, byte[])}. Like the vector engines,
+     * it needs the jdk.incubator.vector module, since class Utf8 links to it.
+     */
+    SCALAR,
+    /** {@link Utf8Swar}, the only engine that runs without the vector module. */
+    SWAR,
+    /** {@link Utf8Vector128}. */
+    VECTOR_128,
+    /** {@link Utf8Vector256}. */
+    VECTOR_256,
+    /** {@link Utf8Vector512}. */
+    VECTOR_512;
+
+    boolean needsVectorModule() {
+      return this != SWAR;
+    }
+  }
+
+  // exclusive upper bounds of the length buckets; the last has no bound
+  private static final int[] BUCKET_LIMITS = {64, 512, 4096, 65536, Integer.MAX_VALUE};
+
+  private final Engine[] engines;
+
+  /*
+  The engine for each bit length of an input length, 0 to 32. The bucket
+  limits are powers of two, so this replaces a search of them with one load.
+   */
+  private final Engine[] enginesByBitLength = new Engine[Integer.SIZE + 1];
+
+  /**
+   * Creates a profile with one engine for each bucket, shortest first.
+   */
+  public Utf8Profile(Engine... engines) {
+    if (engines.length != BUCKET_LIMITS.length) {
+      throw new IllegalArgumentException(
+          "expected " + BUCKET_LIMITS.length + " engines, got " + engines.length);
+    }
+    this.engines = engines.clone();
+    int b = 0;
+    for (int bits = 0; bits <= Integer.SIZE; bits++) {
+      // lengths with this many bits are below 1 << bits
+      while (b < BUCKET_LIMITS.length - 1 && (1L << bits) > BUCKET_LIMITS[b]) {
+        b++;
+      }
+      enginesByBitLength[bits] = engines[b];
+    }
+  }
+
+  /**
+   * Returns the engine used for inputs of the given length.
+   */
+  public Engine engineFor(int length) {
+    return enginesByBitLength[Integer.SIZE - Integer.numberOfLeadingZeros(length)];
+  }
+
+  /**
+   * Returns the engine of bucket b.
+   */
+  public Engine engine(int b) {
+    return engines[b];
+  }
+
+  /**
+   * Returns the number of buckets.
+   */
+  public static int bucketCount() {
+    return BUCKET_LIMITS.length;
+  }
+
+  /**
+   * Returns the exclusive upper bound on the lengths in bucket b, or
+   * Integer.MAX_VALUE for the last bucket.
+   */
+  public static int bucketLimit(int b) {
+    return BUCKET_LIMITS[b];
+  }
+
+  /**
+   * Parses a profile in the form written by {@link #toString()}.
+   *
+   * @throws IllegalArgumentException if s is not such a profile.
+   */
+  public static Utf8Profile parse(String s) {
+    String[] pairs = s.strip().split("\\s*,\\s*");
+    if (pairs.length != BUCKET_LIMITS.length) {
+      throw new IllegalArgumentException("expected " + BUCKET_LIMITS.length + " buckets: " + s);
+    }
+    Engine[] engines = new Engine[pairs.length];
+    for (int b = 0; b < pairs.length; b++) {
+      int eq = pairs[b].indexOf('=');
+      if (eq < 0 || !pairs[b].substring(0, eq).strip().equals(limitName(b))) {
+        throw new IllegalArgumentException("expected " + limitName(b) + "=ENGINE: " + pairs[b]);
+      }
+      engines[b] = Engine.valueOf(pairs[b].substring(eq + 1).strip());
+    }
+    return new Utf8Profile(engines);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (int b = 0; b < engines.length; b++) {
+      if (b > 0) {
+        sb.append(',');
+      }
+      sb.append(limitName(b)).append('=').append(engines[b]);
+    }
+    return sb.toString();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof Utf8Profile p && Arrays.equals(engines, p.engines);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(engines);
+  }
+
+  private static String limitName(int b) {
+    return BUCKET_LIMITS[b] == Integer.MAX_VALUE ? "max" : Integer.toString(BUCKET_LIMITS[b]);
+  }
+}
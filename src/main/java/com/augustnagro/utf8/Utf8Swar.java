@@ -0,0 +1,133 @@
+package com.augustnagro.utf8;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Objects;
+
+/**
+ * Validates UTF-8 8 bytes at a time in a long (SIMD within a register).
+ * <p>
+ * This class does not use the Vector API, so it works when
+ * jdk.incubator.vector is not available. It is also faster than
+ * {@link Utf8#scalarValidUtf8(int, int, byte[])} for the inputs and tails
+ * shorter than one vector.
+ */
+public final class Utf8Swar {
+
+  private static final VarHandle LONG_VIEW =
+      MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+  private static final long HIGH_BITS = 0x8080808080808080L;
+
+  private Utf8Swar() {}
+
+  /**
+   * Returns true if buf is valid UTF-8.
+   */
+  public static boolean validate(byte[] buf) {
+    return validate(buf, 0, buf.length);
+  }
+
+  /**
+   * Returns true if buf[off, off + len) is valid UTF-8.
+   */
+  public static boolean validate(byte[] buf, int off, int len) {
+    Objects.checkFromIndexSize(off, len, buf.length);
+    return validateRange(buf, off, off + len);
+  }
+
+  /*
+  Validates buf[pos, end) without checking the range; also used for the tails
+  of the vector validators.
+
+  The bytes are read little-endian, so the byte at pos is the lowest byte of
+  word. Each iteration
+  -> skips 8 bytes if they are all ascii,
+  -> skips the ascii bytes before the first non-ascii one,
+  -> skips 4 two-byte chars if word is exactly that (common in Cyrillic,
+     Greek, Hebrew, ...), or
+  -> checks the single char starting at pos.
+   */
+  static boolean validateRange(byte[] buf, int pos, int end) {
+    while (pos + Long.BYTES <= end) {
+      long word = (long) LONG_VIEW.get(buf, pos);
+      long high = word & HIGH_BITS;
+      if (high == 0) {
+        pos += Long.BYTES;
+      } else if ((high & 0x80) == 0) {
+        pos += Long.numberOfTrailingZeros(high) >>> 3;
+      } else if (isFourTwoByteChars(word)) {
+        pos += Long.BYTES;
+      } else {
+        int charLength = charLength((int) word);
+        if (charLength == 0) {
+          return false;
+        }
+        pos += charLength;
+      }
+    }
+
+    while (pos < end) {
+      /*
+      Gather up to 4 bytes, zero padded. Zero is not a continuation byte,
+      so a char cut off by end fails the check in charLength.
+       */
+      int word = 0;
+      for (int j = 0; j < 4 && pos + j < end; j++) {
+        word |= (buf[pos + j] & 0xff) << (8 * j);
+      }
+      if ((word & 0x80) == 0) {
+        pos++;
+      } else {
+        int charLength = charLength(word);
+        if (charLength == 0) {
+          return false;
+        }
+        pos += charLength;
+      }
+    }
+    return true;
+  }
+
+  /*
+  True if every 16 bit lane of word is a 2-byte char: 110_____ 10______
+  (with the leading byte in the low half), whose leading byte is not the
+  overlong 0xC0 or 0xC1. The leading byte's bits 1 to 4 must not all be zero;
+  adding 0x7fff to each lane sets bit 15 exactly when they are not, without
+  carrying into the next lane.
+   */
+  private static boolean isFourTwoByteChars(long word) {
+    if ((word & 0xc0e0c0e0c0e0c0e0L) != 0x80c080c080c080c0L) {
+      return false;
+    }
+    long notOverlong = (word & 0x001e001e001e001eL) + 0x7fff7fff7fff7fffL;
+    return (notOverlong & 0x8000800080008000L) == 0x8000800080008000L;
+  }
+
+  /*
+  Returns the length of the valid multi-byte char at the start of word
+  (the byte at pos in the low 8 bits), or 0 if it is invalid.
+   */
+  private static int charLength(int word) {
+    int byte0 = word & 0xff;
+    int cont1 = (word >>> 8) & 0b00111111;
+    int cont2 = (word >>> 16) & 0b00111111;
+    int cont3 = (word >>> 24) & 0b00111111;
+
+    if ((word & 0xc0e0) == 0x80c0) {
+      return byte0 >= 0xc2 ? 2 : 0;
+    } else if ((word & 0xc0c0f0) == 0x8080e0) {
+      int codePoint = ((byte0 & 0b00001111) << 12) | (cont1 << 6) | cont2;
+      boolean valid = codePoint >= 0x800 && (codePoint < 0xd800 || codePoint > 0xdfff);
+      return valid ? 3 : 0;
+    } else if ((word & 0xc0c0c0f8) == 0x808080f0) {
+      int codePoint = ((byte0 & 0b00000111) << 18) | (cont1 << 12) | (cont2 << 6) | cont3;
+      boolean valid = codePoint >= 0x10000 && codePoint <= 0x10ffff;
+      return valid ? 4 : 0;
+    } else {
+      // a continuation byte without a leading byte, 0xf8 and above, or missing continuation bytes
+      return 0;
+    }
+  }
+}
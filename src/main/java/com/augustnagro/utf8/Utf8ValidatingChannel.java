@@ -0,0 +1,50 @@
+package com.augustnagro.utf8;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * A ReadableByteChannel that validates the UTF-8 read through it, like
+ * {@link Utf8ValidatingInputStream}. The bytes are validated in place in the
+ * caller's buffer; only a partial vector at the end of a read is copied.
+ */
+public class Utf8ValidatingChannel implements ReadableByteChannel {
+  private final ReadableByteChannel channel;
+  private final Utf8Validator validator;
+  private boolean finished;
+
+  public Utf8ValidatingChannel(ReadableByteChannel channel, LookupTables lut) {
+    this.channel = channel;
+    this.validator = new Utf8Validator(lut);
+  }
+
+  @Override
+  public int read(ByteBuffer dst) throws IOException {
+    int start = dst.position();
+    int n = channel.read(dst);
+    if (n > 0) {
+      Utf8Error error = validator.update(dst.slice(start, n)).error();
+      if (error != null) {
+        throw new Utf8ValidationException(error);
+      }
+    } else if (n < 0 && !finished) {
+      finished = true;
+      Utf8Error error = validator.finishWithError();
+      if (error != null) {
+        throw new Utf8ValidationException(error);
+      }
+    }
+    return n;
+  }
+
+  @Override
+  public boolean isOpen() {
+    return channel.isOpen();
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
@@ -0,0 +1,83 @@
+package com.augustnagro.utf8;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An InputStream that validates the UTF-8 read through it, like
+ * {@link Utf8Validator}. A read throws {@link Utf8ValidationException} as soon
+ * as the bytes read so far contain an error, or at end of stream if it ends
+ * in the middle of a char. Bytes are checked a vector at a time, so up to a
+ * vector of bytes after an error may be returned before the exception.
+ * <p>
+ * Mark and reset are not supported, and skipped bytes are read and validated.
+ */
+public class Utf8ValidatingInputStream extends FilterInputStream {
+  private static final int SKIP_BUFFER_LENGTH = 8192;
+
+  private final Utf8Validator validator;
+  private final byte[] single = new byte[1];
+  // allocated by the first skip
+  private byte[] skipBuffer;
+  private boolean finished;
+
+  public Utf8ValidatingInputStream(InputStream in, LookupTables lut) {
+    super(in);
+    this.validator = new Utf8Validator(lut);
+  }
+
+  @Override
+  public int read() throws IOException {
+    int n = read(single, 0, 1);
+    return n < 0 ? -1 : single[0] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    int n = in.read(b, off, len);
+    if (n > 0) {
+      Utf8Error error = validator.update(b, off, n).error();
+      if (error != null) {
+        throw new Utf8ValidationException(error);
+      }
+    } else if (n < 0 && !finished) {
+      finished = true;
+      Utf8Error error = validator.finishWithError();
+      if (error != null) {
+        throw new Utf8ValidationException(error);
+      }
+    }
+    return n;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    if (n > 0 && skipBuffer == null) {
+      skipBuffer = new byte[SKIP_BUFFER_LENGTH];
+    }
+    long remaining = n;
+    while (remaining > 0) {
+      int read = read(skipBuffer, 0, (int) Math.min(remaining, skipBuffer.length));
+      if (read < 0) {
+        break;
+      }
+      remaining -= read;
+    }
+    return n - Math.max(remaining, 0);
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  @Override
+  public void mark(int readlimit) {
+  }
+
+  @Override
+  public void reset() throws IOException {
+    throw new IOException("mark/reset not supported");
+  }
+}
@@ -0,0 +1,36 @@
+package com.augustnagro.utf8;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JFR event for one validation of a large input, emitted when
+ * {@link Utf8Metrics} is enabled.
+ */
+@Name("com.augustnagro.utf8.Validation")
+@Label("UTF-8 Validation")
+@Category("UTF-8")
+@Description("A validation of a large input by com.augustnagro.utf8.Utf8")
+@StackTrace(false)
+final class Utf8ValidationEvent extends jdk.jfr.Event {
+
+  @Label("Vector Bits")
+  int vectorBits;
+
+  @Label("Bytes")
+  @DataAmount
+  long bytes;
+
+  @Label("ASCII Blocks")
+  long asciiBlocks;
+
+  @Label("Non-ASCII Blocks")
+  long nonAsciiBlocks;
+
+  @Label("Valid")
+  boolean valid;
+}
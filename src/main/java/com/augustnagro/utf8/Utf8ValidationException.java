@@ -0,0 +1,25 @@
+package com.augustnagro.utf8;
+
+import java.io.IOException;
+
+/**
+ * Thrown by {@link Utf8ValidatingInputStream} and {@link Utf8ValidatingChannel}
+ * when the bytes read are not valid UTF-8.
+ */
+public class Utf8ValidationException extends IOException {
+  private static final long serialVersionUID = 1L;
+
+  private final Utf8Error error;
+
+  public Utf8ValidationException(Utf8Error error) {
+    super("Invalid UTF-8 at offset " + error.offset() + ": " + error.kind());
+    this.error = error;
+  }
+
+  /**
+   * The first error, with its offset from the first byte read.
+   */
+  public Utf8Error error() {
+    return error;
+  }
+}
@@ -0,0 +1,303 @@
+package com.augustnagro.utf8;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.Vector;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Objects;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static jdk.incubator.vector.VectorOperators.*;
+
+/**
+ * Validates UTF-8 that arrives in chunks, like socket reads.
+ * <p>
+ * Call {@link #update(byte[], int, int)} for every chunk and {@link #finish()}
+ * once the input is exhausted. Multi-byte chars may be split across chunks.
+ * Instances are not thread-safe.
+ * <p>
+ * The error vector is checked once per update, so {@link #error()} reports
+ * an error as soon as the update that completes its vector returns. Once an
+ * error is found, later updates are ignored until the validator is reset.
+ */
+public final class Utf8Validator {
+  private final LookupTables lut;
+  private final VectorSpecies<Byte> species;
+
+  /*
+  Bytes from the end of the last update that did not fill a whole vector.
+  They are completed by the next update, or zero-padded by finish().
+   */
+  private final byte[] pending;
+  private int pendingLength;
+
+  /*
+  The same local state as Utf8.validate, kept between calls. The lanes are
+  stored in arrays rather than as vector fields: a loop starting from a
+  field of type ByteVector does not know the vector's exact class, so the
+  JIT would allocate a vector on every iteration. There is no error vector,
+  since processing stops at the first error.
+   */
+  private final byte[] prevIncomplete;
+  private final byte[] prevInputBlock;
+
+  /*
+  Used to find the offset of an error: the number of bytes processed,
+  the last 3 of them (a char cut off by the end of a vector starts there),
+  and the error once found.
+   */
+  private long position;
+  private final byte[] lastBytes = new byte[3];
+  private Utf8Error firstError;
+
+  public Utf8Validator(LookupTables lut) {
+    this.lut = lut;
+    this.species = lut.species();
+    this.pending = new byte[species.length()];
+    this.prevIncomplete = new byte[species.length()];
+    this.prevInputBlock = new byte[species.length()];
+    reset();
+  }
+
+  /**
+   * Validates buf[off, off + len). Returns this validator.
+   */
+  public Utf8Validator update(byte[] buf, int off, int len) {
+    Objects.checkFromIndexSize(off, len, buf.length);
+    int end = off + len;
+    int i = off;
+
+    if (pendingLength > 0) {
+      int n = Math.min(len, pending.length - pendingLength);
+      System.arraycopy(buf, i, pending, pendingLength, n);
+      pendingLength += n;
+      i += n;
+      if (pendingLength < pending.length) {
+        return this;
+      }
+      pendingLength = 0;
+      process(pending, 0, pending.length);
+    }
+
+    int bound = i + species.loopBound(end - i);
+    process(buf, i, bound);
+
+    pendingLength = end - bound;
+    System.arraycopy(buf, bound, pending, 0, pendingLength);
+    return this;
+  }
+
+  /**
+   * Validates the bytes of seg, without copying them unless they end
+   * in a partial vector. Returns this validator.
+   */
+  public Utf8Validator update(MemorySegment seg) {
+    long end = seg.byteSize();
+    long i = 0;
+
+    if (pendingLength > 0) {
+      int n = (int) Math.min(end, pending.length - pendingLength);
+      MemorySegment.copy(seg, JAVA_BYTE, i, pending, pendingLength, n);
+      pendingLength += n;
+      i += n;
+      if (pendingLength < pending.length) {
+        return this;
+      }
+      pendingLength = 0;
+      process(pending, 0, pending.length);
+    }
+
+    long bound = i + species.loopBound(end - i);
+    process(seg, i, bound);
+
+    pendingLength = (int) (end - bound);
+    MemorySegment.copy(seg, JAVA_BYTE, bound, pending, 0, pendingLength);
+    return this;
+  }
+
+  /**
+   * Validates the bytes of bb from its position to its limit.
+   * The position is not changed. Returns this validator.
+   */
+  public Utf8Validator update(ByteBuffer bb) {
+    if (bb.hasArray()) {
+      return update(bb.array(), bb.arrayOffset() + bb.position(), bb.remaining());
+    }
+    return update(MemorySegment.ofBuffer(bb));
+  }
+
+  /**
+   * Returns the first error found so far, or null. Bytes that do not yet
+   * fill a vector are only checked by a later update or {@link #finish()}.
+   */
+  public Utf8Error error() {
+    return firstError;
+  }
+
+  /**
+   * Returns true if all bytes seen since construction (or the last finish)
+   * are valid UTF-8, then resets this validator so it can be reused.
+   */
+  public boolean finish() {
+    return finishWithError() == null;
+  }
+
+  /**
+   * Like {@link #finish()}, but returns the first error in all bytes seen,
+   * with its offset from the first byte, or null if they are valid UTF-8.
+   */
+  public Utf8Error finishWithError() {
+    if (firstError == null) {
+      /*
+      Zero is ascii, so padding the last partial vector with zeros leaves
+      valid input valid, while a char cut off by the end of input becomes
+      TOO_SHORT (or is caught by prevIncomplete if the block is all ascii).
+       */
+      Arrays.fill(pending, pendingLength, pending.length, (byte) 0);
+      process(MemorySegment.ofArray(pending), 0, pending.length, pendingLength);
+    }
+    Utf8Error result = firstError;
+    reset();
+    return result;
+  }
+
+  /**
+   * Discards all state, as if this validator were newly constructed.
+   */
+  public void reset() {
+    pendingLength = 0;
+    Arrays.fill(prevIncomplete, (byte) 0);
+    Arrays.fill(prevInputBlock, (byte) 0);
+    position = 0;
+    Arrays.fill(lastBytes, (byte) 0);
+    firstError = null;
+  }
+
+  /*
+  Runs the loop body of Utf8.validate over buf[from, to), which must be a
+  multiple of the vector length. The species is taken from lut, since the
+  JIT only treats static final fields (not the species field) as constant.
+   */
+  private void process(byte[] buf, int from, int to) {
+    if (from == to || firstError != null) {
+      return;
+    }
+    VectorSpecies<Byte> species = lut.species();
+    ByteVector isIncompleteAnd = lut.isIncompleteAnd();
+    ByteVector isIncompleteEq = lut.isIncompleteEq();
+    ByteVector error = ByteVector.zero(species);
+    ByteVector prevIncomplete = ByteVector.fromArray(species, this.prevIncomplete, 0);
+    ByteVector prevInputBlock = ByteVector.fromArray(species, this.prevInputBlock, 0);
+
+    for (int i = from; i < to; i += species.length()) {
+      ByteVector input = ByteVector.fromArray(species, buf, i);
+      if (!input.test(IS_NEGATIVE).anyTrue()) {
+        error = error.or(prevIncomplete);
+      } else {
+        error = error.or(Utf8.testUtf8(input, prevInputBlock, lut));
+        prevIncomplete = (ByteVector) input.and(isIncompleteAnd).eq(isIncompleteEq).toVector();
+        prevInputBlock = input;
+      }
+    }
+
+    if (!error.test(IS_DEFAULT).allTrue()) {
+      firstError = locateError(MemorySegment.ofArray(buf), from, to, to - from);
+    }
+    prevIncomplete.intoArray(this.prevIncomplete, 0);
+    prevInputBlock.intoArray(this.prevInputBlock, 0);
+    position += to - from;
+    System.arraycopy(buf, to - lastBytes.length, lastBytes, 0, lastBytes.length);
+  }
+
+  private void process(MemorySegment seg, long from, long to) {
+    process(seg, from, to, to - from);
+  }
+
+  /*
+  Same as process(byte[], int, int), where only the first realLength bytes
+  are input and the rest is padding.
+   */
+  private void process(MemorySegment seg, long from, long to, long realLength) {
+    if (from == to || firstError != null) {
+      return;
+    }
+    VectorSpecies<Byte> species = lut.species();
+    ByteVector isIncompleteAnd = lut.isIncompleteAnd();
+    ByteVector isIncompleteEq = lut.isIncompleteEq();
+    ByteVector error = ByteVector.zero(species);
+    ByteVector prevIncomplete = ByteVector.fromArray(species, this.prevIncomplete, 0);
+    ByteVector prevInputBlock = ByteVector.fromArray(species, this.prevInputBlock, 0);
+
+    for (long i = from; i < to; i += species.length()) {
+      ByteVector input = ByteVector.fromMemorySegment(species, seg, i, ByteOrder.nativeOrder());
+      if (!input.test(IS_NEGATIVE).anyTrue()) {
+        error = error.or(prevIncomplete);
+      } else {
+        error = error.or(Utf8.testUtf8(input, prevInputBlock, lut));
+        prevIncomplete = (ByteVector) input.and(isIncompleteAnd).eq(isIncompleteEq).toVector();
+        prevInputBlock = input;
+      }
+    }
+
+    if (!error.test(IS_DEFAULT).allTrue()) {
+      firstError = locateError(seg, from, to, realLength);
+    }
+    prevIncomplete.intoArray(this.prevIncomplete, 0);
+    prevInputBlock.intoArray(this.prevInputBlock, 0);
+    position += to - from;
+    MemorySegment.copy(seg, JAVA_BYTE, to - lastBytes.length, lastBytes, 0, lastBytes.length);
+  }
+
+  /*
+  Called when the kernel found an error in seg[from, to), with the state
+  arrays still holding the lanes from before it. Runs the kernel again from that
+  state to find the first vector with an error, then finds the exact error
+  with Utf8.scalarFirstError, starting from the leading byte of any char
+  cut off by the vector before.
+   */
+  private Utf8Error locateError(MemorySegment seg, long from, long to, long realLength) {
+    VectorSpecies<Byte> species = lut.species();
+    ByteVector isIncompleteAnd = lut.isIncompleteAnd();
+    ByteVector isIncompleteEq = lut.isIncompleteEq();
+    ByteVector prevIncomplete = ByteVector.fromArray(species, this.prevIncomplete, 0);
+    ByteVector prevInputBlock = ByteVector.fromArray(species, this.prevInputBlock, 0);
+
+    long i = from;
+    for (; i < to; i += species.length()) {
+      ByteVector input = ByteVector.fromMemorySegment(species, seg, i, ByteOrder.nativeOrder());
+      Vector<Byte> error;
+      if (!input.test(IS_NEGATIVE).anyTrue()) {
+        error = prevIncomplete;
+      } else {
+        error = Utf8.testUtf8(input, prevInputBlock, lut);
+        prevIncomplete = (ByteVector) input.and(isIncompleteAnd).eq(isIncompleteEq).toVector();
+        prevInputBlock = input;
+      }
+      if (!error.test(IS_DEFAULT).allTrue()) {
+        break;
+      }
+    }
+
+    // the 3 bytes before the vector at i, then its bytes that are input
+    int length = (int) Math.min(species.length(), from + realLength - i);
+    byte[] bytes = new byte[lastBytes.length + length];
+    if (i == from) {
+      System.arraycopy(lastBytes, 0, bytes, 0, lastBytes.length);
+    } else {
+      MemorySegment.copy(seg, JAVA_BYTE, i - lastBytes.length, bytes, 0, lastBytes.length);
+    }
+    MemorySegment.copy(seg, JAVA_BYTE, i, bytes, lastBytes.length, length);
+
+    int start = Utf8.backUpToLeadingByte(bytes, 0, lastBytes.length);
+    Utf8Error error = Utf8.scalarFirstError(start, bytes.length, bytes);
+    if (Utf8Metrics.ENABLED) {
+      Utf8Metrics.error(error);
+    }
+    long offset = position + (i - from) - lastBytes.length + error.offset();
+    return new Utf8Error(offset, error.kind());
+  }
+}
@@ -0,0 +1,94 @@
+package com.augustnagro.utf8;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.Vector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Objects;
+
+import static jdk.incubator.vector.VectorOperators.*;
+
+/**
+ * {@link Utf8#validate(byte[], int, int, LookupTables)} for 256-bit vectors only.
+ * <p>
+ * The species and lookup tables are static final fields rather than
+ * {@link LookupTables} calls, so they are constants to the JIT even when
+ * the caller is not inlined or several shapes are in use. The kernel is
+ * written out in one method, so no vector is passed to a call that the JIT
+ * might not inline, and uses lanewise and compare instead of helpers like
+ * and, or and eq: those are shared by every shape, so once more than one
+ * shape has run, their calls to lanewise are not inlined and every vector
+ * is boxed. Here, every call is made from this class and only ever sees
+ * one shape, so validation allocates nothing.
+ */
+public final class Utf8Vector256 {
+  private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_256;
+  private static final ByteVector BYTE1_HIGH_LOOKUP = Util.buildByte1HighLookup(SPECIES);
+  private static final ByteVector BYTE1_LOW_LOOKUP = Util.buildByte1LowLookup(SPECIES);
+  private static final ByteVector BYTE2_HIGH_LOOKUP = Util.buildByte2HighLookup(SPECIES);
+  private static final ByteVector IS_INCOMPLETE_AND = Util.buildIsIncompleteAnd(SPECIES);
+  private static final ByteVector IS_INCOMPLETE_EQ = Util.buildIsIncompleteEq(SPECIES);
+
+  private Utf8Vector256() {}
+
+  /**
+   * Returns true if buf is valid UTF-8.
+   */
+  public static boolean validate(byte[] buf) {
+    return validate(buf, 0, buf.length);
+  }
+
+  /**
+   * Returns true if buf[off, off + len) is valid UTF-8.
+   */
+  public static boolean validate(byte[] buf, int off, int len) {
+    Objects.checkFromIndexSize(off, len, buf.length);
+    int end = off + len;
+
+    /*
+    The same local state as Utf8.validate, except that prevIncomplete is a
+    boolean: an ascii vector after an incomplete char is an error, so it
+    returns at once. With one vector less in the loop, nothing is boxed when
+    the JIT compiles the non-ascii branch as a trap because the input so far
+    has all been ascii.
+     */
+    ByteVector error = ByteVector.zero(SPECIES);
+    boolean prevIncomplete = false;
+    ByteVector prevInputBlock = ByteVector.zero(SPECIES);
+
+    int i = off;
+    for (; i < off + SPECIES.loopBound(len); i += SPECIES.length()) {
+      ByteVector input = ByteVector.fromArray(SPECIES, buf, i);
+      if (!input.test(IS_NEGATIVE).anyTrue()) {
+        if (prevIncomplete) {
+          return false;
+        }
+      } else {
+        // Utf8.testUtf8, written out so no vector is passed to another method
+        ByteVector prev1 = prevInputBlock.slice(SPECIES.length() - 1, input);
+        ByteVector prev2 = prevInputBlock.slice(SPECIES.length() - 2, input);
+        ByteVector prev3 = prevInputBlock.slice(SPECIES.length() - 3, input);
+        VectorMask<Byte> is3ByteCont = prev2.lanewise(AND, (byte) 0b11100000).compare(EQ, (byte) 0b11100000);
+        VectorMask<Byte> is4ByteCont = prev3.lanewise(AND, (byte) 0b11110000).compare(EQ, (byte) 0b11110000);
+        Vector<Byte> markedContinuations =
+            is3ByteCont.or(is4ByteCont).toVector().lanewise(AND, (byte) 0x80);
+        ByteVector byte1High = prev1.lanewise(LSHR, 4).selectFrom(BYTE1_HIGH_LOOKUP);
+        ByteVector byte1Low = prev1.lanewise(AND, (byte) 0x0f).selectFrom(BYTE1_LOW_LOOKUP);
+        ByteVector byte2High = input.lanewise(LSHR, 4).selectFrom(BYTE2_HIGH_LOOKUP);
+        ByteVector specialCases = byte1High.lanewise(AND, byte1Low).lanewise(AND, byte2High);
+        error = error.lanewise(OR, markedContinuations.lanewise(XOR, specialCases));
+
+        prevIncomplete = input.lanewise(AND, IS_INCOMPLETE_AND).compare(EQ, IS_INCOMPLETE_EQ).anyTrue();
+        prevInputBlock = input;
+      }
+    }
+    if (i == off) {
+      return Utf8Swar.validateRange(buf, off, end);
+    }
+    if (!error.test(IS_DEFAULT).allTrue()) {
+      return false;
+    }
+    return Utf8Swar.validateRange(buf, Utf8.backUpToLeadingByte(buf, off, i), end);
+  }
+}
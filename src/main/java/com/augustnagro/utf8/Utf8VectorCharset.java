@@ -0,0 +1,41 @@
+package com.augustnagro.utf8;
+
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * UTF-8, decoded and encoded with {@link Utf8Decoder} and {@link Utf8Encoder}.
+ * <p>
+ * Registered by {@link Utf8VectorCharsetProvider}, so existing code can use
+ * it through {@code Charset.forName("x-utf-8-vector")}. Malformed input is
+ * reported one maximal subpart at a time, like the WHATWG encoding standard,
+ * so {@link java.nio.charset.CodingErrorAction#REPLACE} gives the same output
+ * as {@link Utf8#sanitize(byte[], int, int, byte[], int, LookupTables)}.
+ */
+public final class Utf8VectorCharset extends Charset {
+
+  public static final String NAME = "x-utf-8-vector";
+
+  static final LookupTables LUT = new LookupTablesPreferred();
+
+  public Utf8VectorCharset() {
+    super(NAME, new String[] {"x-utf8-vector"});
+  }
+
+  @Override
+  public boolean contains(Charset cs) {
+    return cs instanceof Utf8VectorCharset || StandardCharsets.UTF_8.contains(cs);
+  }
+
+  @Override
+  public CharsetDecoder newDecoder() {
+    return new Utf8VectorDecoder(this);
+  }
+
+  @Override
+  public CharsetEncoder newEncoder() {
+    return new Utf8VectorEncoder(this);
+  }
+}
@@ -0,0 +1,43 @@
+package com.augustnagro.utf8;
+
+import java.nio.charset.Charset;
+import java.nio.charset.spi.CharsetProvider;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Provides {@link Utf8VectorCharset} through
+ * META-INF/services/java.nio.charset.spi.CharsetProvider.
+ * No charsets are provided when jdk.incubator.vector is not available.
+ */
+public final class Utf8VectorCharsetProvider extends CharsetProvider {
+
+  /*
+  The JDK creates providers for any charset name it does not know, so this
+  must not load Utf8Auto, which may start calibrating.
+   */
+  private final List<Charset> charsets = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+      ? List.of(new Utf8VectorCharset())
+      : Collections.emptyList();
+
+  @Override
+  public Iterator<Charset> charsets() {
+    return charsets.iterator();
+  }
+
+  @Override
+  public Charset charsetForName(String charsetName) {
+    for (Charset charset : charsets) {
+      if (charset.name().equalsIgnoreCase(charsetName)) {
+        return charset;
+      }
+      for (String alias : charset.aliases()) {
+        if (alias.equalsIgnoreCase(charsetName)) {
+          return charset;
+        }
+      }
+    }
+    return null;
+  }
+}
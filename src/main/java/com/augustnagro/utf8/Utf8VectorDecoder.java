@@ -0,0 +1,149 @@
+package com.augustnagro.utf8;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+
+/**
+ * The decoder of {@link Utf8VectorCharset}.
+ * <p>
+ * Input is decoded with {@link Utf8Decoder#decode} in chunks as long as the
+ * room left in the output, cut back to a char boundary. When a chunk is
+ * invalid, {@link Utf8#firstError} finds where, the valid part before it is
+ * decoded, and the bad sequence is reported as malformed. A char that
+ * does not fit in a chunk is decoded on its own.
+ */
+final class Utf8VectorDecoder extends CharsetDecoder {
+
+  // direct buffers are copied through arrays of this size
+  private static final int SCRATCH_LENGTH = 8192;
+
+  private byte[] scratchBytes;
+  private char[] scratchChars;
+
+  Utf8VectorDecoder(Utf8VectorCharset cs) {
+    super(cs, 1.0f, 1.0f);
+  }
+
+  @Override
+  protected CoderResult decodeLoop(ByteBuffer in, CharBuffer out) {
+    if (in.hasArray() && out.hasArray()) {
+      return decodeArrayLoop(in, out);
+    }
+    return decodeBufferLoop(in, out);
+  }
+
+  private CoderResult decodeArrayLoop(ByteBuffer in, CharBuffer out) {
+    byte[] src = in.array();
+    int sp = in.arrayOffset() + in.position();
+    int sl = in.arrayOffset() + in.limit();
+    char[] dst = out.array();
+    int dp = out.arrayOffset() + out.position();
+    int dl = out.arrayOffset() + out.limit();
+
+    try {
+      while (sp < sl) {
+        if (dp == dl) {
+          return CoderResult.OVERFLOW;
+        }
+        // len bytes decode to at most len chars, so the chunk always fits
+        int end = lastCharBoundary(src, sp, sp + Math.min(sl - sp, dl - dp));
+        if (end > sp) {
+          int n = Utf8Decoder.decode(src, sp, end - sp, dst, dp, Utf8VectorCharset.LUT);
+          if (n >= 0) {
+            sp = end;
+            dp += n;
+            continue;
+          }
+          Utf8Error error = Utf8.firstError(src, sp, end - sp, Utf8VectorCharset.LUT);
+          int validEnd = (int) error.offset();
+          dp += Utf8Decoder.decode(src, sp, validEnd - sp, dst, dp, Utf8VectorCharset.LUT);
+          sp = validEnd;
+        }
+
+        // one char, which is invalid, or cut off by the end of the input or output
+        int charLength = charLength(src[sp]);
+        int subpartLength = Utf8.maximalSubpartLength(src, sp, sl);
+        if (charLength == 0 || (subpartLength < charLength && sp + subpartLength < sl)) {
+          return CoderResult.malformedForLength(subpartLength);
+        }
+        if (subpartLength < charLength) {
+          // a valid prefix that may be completed by more input
+          return CoderResult.UNDERFLOW;
+        }
+        if (dl - dp < (charLength == 4 ? 2 : 1)) {
+          return CoderResult.OVERFLOW;
+        }
+        dp = Utf8Decoder.scalarDecode(sp, sp + charLength, src, dst, dp);
+        sp += charLength;
+      }
+      return CoderResult.UNDERFLOW;
+    } finally {
+      in.position(sp - in.arrayOffset());
+      out.position(dp - out.arrayOffset());
+    }
+  }
+
+  /*
+  Copies in and out through arrays, when either is not backed by one.
+   */
+  private CoderResult decodeBufferLoop(ByteBuffer in, CharBuffer out) {
+    if (scratchBytes == null) {
+      scratchBytes = new byte[SCRATCH_LENGTH];
+      scratchChars = new char[SCRATCH_LENGTH];
+    }
+    while (true) {
+      int len = Math.min(in.remaining(), SCRATCH_LENGTH);
+      boolean lastChunk = len == in.remaining();
+      boolean outLimited = out.remaining() <= SCRATCH_LENGTH;
+      in.get(in.position(), scratchBytes, 0, len);
+      ByteBuffer src = ByteBuffer.wrap(scratchBytes, 0, len);
+      CharBuffer dst = CharBuffer.wrap(scratchChars, 0, Math.min(out.remaining(), SCRATCH_LENGTH));
+
+      CoderResult result = decodeArrayLoop(src, dst);
+      in.position(in.position() + src.position());
+      out.put(scratchChars, 0, dst.position());
+
+      if (result.isError()
+          || (result.isOverflow() && outLimited)
+          || (result.isUnderflow() && lastChunk)) {
+        return result;
+      }
+    }
+  }
+
+  /*
+  Returns to, or the index of the leading byte of a char that starts in
+  buf[from, to) but ends after it.
+   */
+  private static int lastCharBoundary(byte[] buf, int from, int to) {
+    for (int j = 1; j <= 3 && to - j >= from; j++) {
+      int b = buf[to - j];
+      if ((b & 0b11000000) != 0b10000000) {
+        return charLength((byte) b) > j ? to - j : to;
+      }
+    }
+    return to;
+  }
+
+  /*
+  Returns the length of the char led by b, or 0 if b cannot start a char.
+   */
+  private static int charLength(byte b) {
+    int byte0 = b & 0xff;
+    if (byte0 < 0x80) {
+      return 1;
+    } else if (byte0 < 0xc2) {
+      return 0;
+    } else if (byte0 < 0xe0) {
+      return 2;
+    } else if (byte0 < 0xf0) {
+      return 3;
+    } else if (byte0 < 0xf5) {
+      return 4;
+    } else {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package com.augustnagro.utf8;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+
+/**
+ * The encoder of {@link Utf8VectorCharset}.
+ * <p>
+ * Input is encoded with {@link Utf8Encoder#encode} in chunks that fit in the
+ * room left in the output at 3 bytes per char. If a chunk has an unpaired
+ * surrogate, it is encoded again one char at a time, which also handles
+ * the chars that do not fit in a chunk.
+ */
+final class Utf8VectorEncoder extends CharsetEncoder {
+
+  // direct buffers are copied through arrays of this size
+  private static final int SCRATCH_LENGTH = 8192;
+
+  private char[] scratchChars;
+  private byte[] scratchBytes;
+
+  Utf8VectorEncoder(Utf8VectorCharset cs) {
+    super(cs, 1.1f, 3.0f);
+  }
+
+  @Override
+  public boolean canEncode(char c) {
+    return !Character.isSurrogate(c);
+  }
+
+  @Override
+  protected CoderResult encodeLoop(CharBuffer in, ByteBuffer out) {
+    if (in.hasArray() && out.hasArray()) {
+      return encodeArrayLoop(in, out);
+    }
+    return encodeBufferLoop(in, out);
+  }
+
+  private CoderResult encodeArrayLoop(CharBuffer in, ByteBuffer out) {
+    char[] src = in.array();
+    int sp = in.arrayOffset() + in.position();
+    int sl = in.arrayOffset() + in.limit();
+    byte[] dst = out.array();
+    int dp = out.arrayOffset() + out.position();
+    int dl = out.arrayOffset() + out.limit();
+    // chars before this index are encoded one at a time
+    int scalarEnd = sp;
+
+    try {
+      while (sp < sl) {
+        if (sp >= scalarEnd) {
+          int end = sp + Math.min(sl - sp, (dl - dp) / 3);
+          // keep a surrogate pair in one chunk
+          if (end > sp && Character.isHighSurrogate(src[end - 1])) {
+            end--;
+          }
+          if (end > sp) {
+            // bounded at dl, since the rest of the array may belong to another buffer
+            int n = (int) Utf8Encoder.encode(
+                src, sp, end - sp, MemorySegment.ofArray(dst).asSlice(dp, dl - dp), 0,
+                Utf8Encoder.SurrogatePolicy.REJECT, Utf8VectorCharset.LUT);
+            if (n >= 0) {
+              sp = end;
+              dp += n;
+              continue;
+            }
+          }
+          scalarEnd = Math.max(end, sp + 1);
+        }
+
+        char c = src[sp];
+        int codePoint = c;
+        int charCount = 1;
+        if (Character.isHighSurrogate(c)) {
+          if (sp + 1 == sl) {
+            // may be completed by more input
+            return CoderResult.UNDERFLOW;
+          }
+          if (!Character.isLowSurrogate(src[sp + 1])) {
+            return CoderResult.malformedForLength(1);
+          }
+          codePoint = Character.toCodePoint(c, src[sp + 1]);
+          charCount = 2;
+        } else if (Character.isLowSurrogate(c)) {
+          return CoderResult.malformedForLength(1);
+        }
+
+        int byteCount = codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+        if (dl - dp < byteCount) {
+          return CoderResult.OVERFLOW;
+        }
+        if (byteCount == 1) {
+          dst[dp++] = (byte) codePoint;
+        } else if (byteCount == 2) {
+          dst[dp++] = (byte) (0b11000000 | (codePoint >> 6));
+          dst[dp++] = (byte) (0b10000000 | (codePoint & 0b00111111));
+        } else if (byteCount == 3) {
+          dst[dp++] = (byte) (0b11100000 | (codePoint >> 12));
+          dst[dp++] = (byte) (0b10000000 | ((codePoint >> 6) & 0b00111111));
+          dst[dp++] = (byte) (0b10000000 | (codePoint & 0b00111111));
+        } else {
+          dst[dp++] = (byte) (0b11110000 | (codePoint >> 18));
+          dst[dp++] = (byte) (0b10000000 | ((codePoint >> 12) & 0b00111111));
+          dst[dp++] = (byte) (0b10000000 | ((codePoint >> 6) & 0b00111111));
+          dst[dp++] = (byte) (0b10000000 | (codePoint & 0b00111111));
+        }
+        sp += charCount;
+      }
+      return CoderResult.UNDERFLOW;
+    } finally {
+      in.position(sp - in.arrayOffset());
+      out.position(dp - out.arrayOffset());
+    }
+  }
+
+  /*
+  Copies in and out through arrays, when either is not backed by one.
+   */
+  private CoderResult encodeBufferLoop(CharBuffer in, ByteBuffer out) {
+    if (scratchChars == null) {
+      scratchChars = new char[SCRATCH_LENGTH];
+      scratchBytes = new byte[3 * SCRATCH_LENGTH];
+    }
+    while (true) {
+      int len = Math.min(in.remaining(), SCRATCH_LENGTH);
+      boolean lastChunk = len == in.remaining();
+      boolean outLimited = out.remaining() <= scratchBytes.length;
+      in.get(in.position(), scratchChars, 0, len);
+      CharBuffer src = CharBuffer.wrap(scratchChars, 0, len);
+      ByteBuffer dst = ByteBuffer.wrap(scratchBytes, 0, Math.min(out.remaining(), scratchBytes.length));
+
+      CoderResult result = encodeArrayLoop(src, dst);
+      in.position(in.position() + src.position());
+      out.put(scratchBytes, 0, dst.position());
+
+      if (result.isError()
+          || (result.isOverflow() && outLimited)
+          || (result.isUnderflow() && lastChunk)) {
+        return result;
+      }
+    }
+  }
+}
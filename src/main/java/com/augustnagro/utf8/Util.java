@@ -19,6 +19,17 @@ class Util {
   private static final byte CARRY = TOO_SHORT | TOO_LONG | TWO_CONTS;
 
   static ByteVector buildByte1HighLookup(VectorSpecies<Byte> species) {
+    return buildByte1HighLookup(species, false, true);
+  }
+
+  /*
+  The tables for encodings derived from UTF-8 differ from it in a few entries:
+  -> allowSurrogates: ED A0..BF (a surrogate) is not an error.
+  -> allow4Byte: when false, a lead byte F_ is an error whatever follows it.
+  -> allowC0: C0 is not an overlong lead, so C0 followed by any continuation
+  passes the tables. Callers must reject all but C0 80 themselves.
+   */
+  static ByteVector buildByte1HighLookup(VectorSpecies<Byte> species, boolean allowSurrogates, boolean allow4Byte) {
     byte[] byte1HighTable = new byte[species.length()];
     byte1HighTable[0] = TOO_LONG;
     byte1HighTable[1] = TOO_LONG;
@@ -39,10 +50,22 @@ class Util {
     byte1HighTable[13] = TOO_SHORT;
     byte1HighTable[14] = TOO_SHORT | OVERLONG_3 | SURROGATE;
     byte1HighTable[15] = TOO_SHORT | TOO_LARGE | TOO_LARGE_1000 | OVERLONG_4;
+
+    if (allowSurrogates) {
+      byte1HighTable[14] = TOO_SHORT | OVERLONG_3;
+    }
+    if (!allow4Byte) {
+      // every byte2High and byte1Low entry has TOO_SHORT or TOO_LONG
+      byte1HighTable[15] = TOO_SHORT | TOO_LONG;
+    }
     return ByteVector.fromArray(species, byte1HighTable, 0);
   }
 
   static ByteVector buildByte1LowLookup(VectorSpecies<Byte> species) {
+    return buildByte1LowLookup(species, false);
+  }
+
+  static ByteVector buildByte1LowLookup(VectorSpecies<Byte> species, boolean allowC0) {
     byte[] byte1LowTable = new byte[species.length()];
     byte1LowTable[0] = CARRY | OVERLONG_3 | OVERLONG_2 | OVERLONG_4;
     byte1LowTable[1] = CARRY | OVERLONG_2;
@@ -63,6 +86,10 @@ class Util {
     byte1LowTable[13] = CARRY | TOO_LARGE | TOO_LARGE_1000 | SURROGATE;
     byte1LowTable[14] = CARRY | TOO_LARGE | TOO_LARGE_1000;
     byte1LowTable[15] = CARRY | TOO_LARGE | TOO_LARGE_1000;
+
+    if (allowC0) {
+      byte1LowTable[0] = CARRY | OVERLONG_3 | OVERLONG_4;
+    }
     return ByteVector.fromArray(species, byte1LowTable, 0);
   }
 
@@ -0,0 +1,55 @@
+package com.augustnagro.utf8;
+
+import java.lang.foreign.MemorySegment;
+import java.util.concurrent.RecursiveTask;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+
+/*
+  Validates seg[from, to) by splitting it in half until the pieces are at
+  most leafSize bytes, and running Utf8.validate on each piece.
+
+  The split point is moved forward past any continuation bytes, so every
+  piece starts on an ascii or leading byte. Then no char straddles two
+  pieces, and the segment is valid exactly when every piece is. A valid
+  char has at most 3 continuation bytes, so if the split point is followed
+  by 4 of them the input is invalid.
+ */
+final class ValidateTask extends RecursiveTask<Boolean> {
+  private static final long serialVersionUID = 1L;
+
+  // ForkJoinTask is Serializable, but a task is never serialized
+  private final transient MemorySegment seg;
+  private final long from;
+  private final long to;
+  private final long leafSize;
+  private final transient LookupTables lut;
+
+  ValidateTask(MemorySegment seg, long from, long to, long leafSize, LookupTables lut) {
+    this.seg = seg;
+    this.from = from;
+    this.to = to;
+    this.leafSize = leafSize;
+    this.lut = lut;
+  }
+
+  @Override
+  protected Boolean compute() {
+    if (to - from <= leafSize) {
+      return Utf8.validate(seg.asSlice(from, to - from), lut);
+    }
+
+    long mid = from + (to - from) / 2;
+    for (int j = 0; (seg.get(JAVA_BYTE, mid) & 0b11000000) == 0b10000000; j++) {
+      if (j == 3) {
+        return false;
+      }
+      mid++;
+    }
+
+    ValidateTask left = new ValidateTask(seg, from, mid, leafSize, lut);
+    left.fork();
+    boolean rightValid = new ValidateTask(seg, mid, to, leafSize, lut).compute();
+    return left.join() && rightValid;
+  }
+}
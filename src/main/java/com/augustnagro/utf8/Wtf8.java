@@ -0,0 +1,156 @@
+package com.augustnagro.utf8;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.Vector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Objects;
+
+import static jdk.incubator.vector.VectorOperators.*;
+
+/**
+ * Validates WTF-8, which encodes potentially ill-formed UTF-16, like
+ * Windows file names, as UTF-8 extended with unpaired surrogates. A
+ * surrogate is encoded as 3 bytes, but a high surrogate directly followed by
+ * a low surrogate is an error, since that pair must be encoded as the 4-byte
+ * sequence of its code point.
+ * <p>
+ * The kernel is that of {@link Utf8VectorPreferred}, with lookup tables that
+ * allow surrogates. Each non-ascii block also checks that no low surrogate's
+ * second byte (ED B_) comes exactly 4 bytes after a high surrogate's first
+ * (ED A_). That check reads 4 bytes of the block before, so an ascii block
+ * also becomes the previous block, or a high surrogate before it could pair
+ * with a low surrogate after it.
+ */
+public final class Wtf8 {
+  private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+  private static final ByteVector BYTE1_HIGH_LOOKUP = Util.buildByte1HighLookup(SPECIES, true, true);
+  private static final ByteVector BYTE1_LOW_LOOKUP = Util.buildByte1LowLookup(SPECIES);
+  private static final ByteVector BYTE2_HIGH_LOOKUP = Util.buildByte2HighLookup(SPECIES);
+  private static final ByteVector IS_INCOMPLETE_AND = Util.buildIsIncompleteAnd(SPECIES);
+  private static final ByteVector IS_INCOMPLETE_EQ = Util.buildIsIncompleteEq(SPECIES);
+
+  private Wtf8() {}
+
+  /**
+   * Returns true if buf is valid WTF-8.
+   */
+  public static boolean validate(byte[] buf) {
+    return validate(buf, 0, buf.length);
+  }
+
+  /**
+   * Returns true if buf[off, off + len) is valid WTF-8.
+   */
+  public static boolean validate(byte[] buf, int off, int len) {
+    Objects.checkFromIndexSize(off, len, buf.length);
+    int end = off + len;
+
+    ByteVector error = ByteVector.zero(SPECIES);
+    boolean prevIncomplete = false;
+    ByteVector prevInputBlock = ByteVector.zero(SPECIES);
+
+    int i = off;
+    for (; i < off + SPECIES.loopBound(len); i += SPECIES.length()) {
+      ByteVector input = ByteVector.fromArray(SPECIES, buf, i);
+      if (!input.test(IS_NEGATIVE).anyTrue()) {
+        if (prevIncomplete) {
+          return false;
+        }
+        prevInputBlock = input;
+      } else {
+        ByteVector prev1 = prevInputBlock.slice(SPECIES.length() - 1, input);
+        ByteVector prev2 = prevInputBlock.slice(SPECIES.length() - 2, input);
+        ByteVector prev3 = prevInputBlock.slice(SPECIES.length() - 3, input);
+        VectorMask<Byte> is3ByteCont = prev2.lanewise(AND, (byte) 0b11100000).compare(EQ, (byte) 0b11100000);
+        VectorMask<Byte> is4ByteCont = prev3.lanewise(AND, (byte) 0b11110000).compare(EQ, (byte) 0b11110000);
+        Vector<Byte> markedContinuations =
+            is3ByteCont.or(is4ByteCont).toVector().lanewise(AND, (byte) 0x80);
+        ByteVector byte1High = prev1.lanewise(LSHR, 4).selectFrom(BYTE1_HIGH_LOOKUP);
+        ByteVector byte1Low = prev1.lanewise(AND, (byte) 0x0f).selectFrom(BYTE1_LOW_LOOKUP);
+        ByteVector byte2High = input.lanewise(LSHR, 4).selectFrom(BYTE2_HIGH_LOOKUP);
+        ByteVector specialCases = byte1High.lanewise(AND, byte1Low).lanewise(AND, byte2High);
+        error = error.lanewise(OR, markedContinuations.lanewise(XOR, specialCases));
+
+        // a surrogate pair encoded as two 3-byte sequences
+        ByteVector prev4 = prevInputBlock.slice(SPECIES.length() - 4, input);
+        VectorMask<Byte> afterHigh = prev4.compare(EQ, (byte) 0xed)
+            .and(prev3.lanewise(AND, (byte) 0b11110000).compare(EQ, (byte) 0b10100000));
+        VectorMask<Byte> isLow = prev1.compare(EQ, (byte) 0xed)
+            .and(input.lanewise(AND, (byte) 0b11110000).compare(EQ, (byte) 0b10110000));
+        error = error.lanewise(OR, afterHigh.and(isLow).toVector());
+
+        prevIncomplete = input.lanewise(AND, IS_INCOMPLETE_AND).compare(EQ, IS_INCOMPLETE_EQ).anyTrue();
+        prevInputBlock = input;
+      }
+    }
+    if (i == off) {
+      return scalarValid(off, end, buf);
+    }
+    if (!error.test(IS_DEFAULT).allTrue()) {
+      return false;
+    }
+    int start = Utf8.backUpToLeadingByte(buf, off, i);
+    return scalarValid(Utf8.backUpToHighSurrogate(buf, off, start), end, buf);
+  }
+
+  /**
+   * Returns true if buf[pos, end) is valid WTF-8.
+   */
+  public static boolean scalarValid(int pos, int end, byte[] buf) {
+    // whether the last char was a high surrogate
+    boolean afterHigh = false;
+    while (pos < end) {
+      int byteVal = buf[pos] & 0xff;
+      if (byteVal < 0b10000000) {
+        pos++;
+        afterHigh = false;
+      } else if ((byteVal & 0b11100000) == 0b11000000) {
+        if (pos + 2 > end || (buf[pos + 1] & 0b11000000) != 0b10000000) {
+          return false;
+        }
+        int codePoint = ((byteVal & 0b00011111) << 6) | (buf[pos + 1] & 0b00111111);
+        if (codePoint < 0x80) {
+          return false;
+        }
+        pos += 2;
+        afterHigh = false;
+      } else if ((byteVal & 0b11110000) == 0b11100000) {
+        if (pos + 3 > end
+            || (buf[pos + 1] & 0b11000000) != 0b10000000
+            || (buf[pos + 2] & 0b11000000) != 0b10000000) {
+          return false;
+        }
+        int codePoint = ((byteVal & 0b00001111) << 12)
+            | ((buf[pos + 1] & 0b00111111) << 6)
+            | (buf[pos + 2] & 0b00111111);
+        if (codePoint < 0x800 || (afterHigh && Character.isLowSurrogate((char) codePoint))) {
+          return false;
+        }
+        pos += 3;
+        afterHigh = Character.isHighSurrogate((char) codePoint);
+      } else if ((byteVal & 0b11111000) == 0b11110000) {
+        if (pos + 4 > end
+            || (buf[pos + 1] & 0b11000000) != 0b10000000
+            || (buf[pos + 2] & 0b11000000) != 0b10000000
+            || (buf[pos + 3] & 0b11000000) != 0b10000000) {
+          return false;
+        }
+        int codePoint = ((byteVal & 0b00000111) << 18)
+            | ((buf[pos + 1] & 0b00111111) << 12)
+            | ((buf[pos + 2] & 0b00111111) << 6)
+            | (buf[pos + 3] & 0b00111111);
+        if (codePoint <= 0xffff || 0x10ffff < codePoint) {
+          return false;
+        }
+        pos += 4;
+        afterHigh = false;
+      } else {
+        // We may have a continuation byte
+        return false;
+      }
+    }
+    return true;
+  }
+}